@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import com.destroystokyo.paper.profile.PlayerProfile;
+import com.google.common.collect.ImmutableList;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.SkullMeta;
+
+import java.util.List;
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * The pre-built admin heads from which Vex helmets are chosen. Resolving a
+ * profile can block, so the heads are rebuilt off the main thread whenever
+ * the configured players change; until the first build finishes there are
+ * none.
+ *
+ * Main thread only, apart from the build itself.
+ */
+public class AdminHeads {
+
+    /**
+     * The UUIDs the current heads were (or are being) built from.
+     */
+    private ImmutableList<String> _ids = ImmutableList.of();
+
+    /**
+     * The built heads.
+     */
+    private ImmutableList<ItemStack> _heads = ImmutableList.of();
+
+    /**
+     * Incremented for each build, so a slow build can't overwrite the result
+     * of a later one.
+     */
+    private int _generation;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Sets the players whose heads are built, rebuilding the heads if they
+     * have changed.
+     *
+     * @param ids the player UUIDs as strings.
+     */
+    void setIds(ImmutableList<String> ids) {
+        if (ids.equals(_ids)) {
+            return;
+        }
+        _ids = ids;
+        int generation = ++_generation;
+        Thread.newAsyncThread(() -> {
+            ImmutableList<ItemStack> heads = build(ids);
+            Thread.newThread(() -> {
+                if (generation == _generation) {
+                    _heads = heads;
+                }
+            });
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the pre-built admin heads. The items are shared, so callers must
+     * clone before handing one to an entity.
+     *
+     * @return the pre-built admin heads; empty until the first build finishes.
+     */
+    ImmutableList<ItemStack> get() {
+        return _heads;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Builds a skull for each of the given player UUIDs, resolving each
+     * profile (including textures) up front. Blocks; call off the main thread.
+     *
+     * @param uuids the player UUIDs as strings.
+     * @return the built heads.
+     */
+    private static ImmutableList<ItemStack> build(List<String> uuids) {
+        ImmutableList.Builder<ItemStack> heads = ImmutableList.builder();
+        for (String uuidString : uuids) {
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(uuidString);
+            } catch (IllegalArgumentException e) {
+                NerdyDragon.log("Skipping invalid admin head UUID: " + uuidString);
+                continue;
+            }
+            PlayerProfile profile = Bukkit.createProfile(uuid);
+            if (!profile.complete(true)) {
+                NerdyDragon.log("Couldn't resolve the profile for admin head " + uuidString);
+            }
+            ItemStack head = new ItemStack(Material.PLAYER_HEAD);
+            SkullMeta meta = (SkullMeta) head.getItemMeta();
+            meta.setPlayerProfile(profile);
+            head.setItemMeta(meta);
+            heads.add(head);
+        }
+        ImmutableList<ItemStack> built = heads.build();
+        NerdyDragon.log("Built " + built.size() + " admin heads.");
+        return built;
+    }
+
+}
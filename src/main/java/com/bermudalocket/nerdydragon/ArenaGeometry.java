@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import com.google.common.collect.ImmutableList;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.util.BlockVector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ------------------------------------------------------------------------
+/**
+ * The shape of an End world's arena: the exit portal's center, the tops of
+ * the obsidian pillars and the island's radius. Computed once per world
+ * from chunk snapshots, off the main thread, and kept in the
+ * {@link StateFile} until an admin asks for a rescan. Where mobs can be
+ * spawned is kept in the {@link ArenaHeightmap} instead.
+ *
+ * Immutable.
+ */
+public final class ArenaGeometry {
+
+    /**
+     * The topmost bedrock block at the center of the exit portal.
+     */
+    private final BlockVector _center;
+
+    /**
+     * The bedrock blocks atop the pillars, on which the crystals sit.
+     */
+    private final ImmutableList<BlockVector> _pillarTops;
+
+    /**
+     * The horizontal distance from the center to the island's furthest end
+     * stone column, in blocks.
+     */
+    private final int _radius;
+
+    /**
+     * When this geometry was scanned, in ms since the epoch.
+     */
+    private final long _scannedAt;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param center the portal center.
+     * @param pillarTops the pillar tops.
+     * @param radius the island's radius.
+     * @param scannedAt when the geometry was scanned.
+     */
+    private ArenaGeometry(BlockVector center, List<BlockVector> pillarTops, int radius, long scannedAt) {
+        _center = center;
+        _pillarTops = ImmutableList.copyOf(pillarTops);
+        _radius = radius;
+        _scannedAt = scannedAt;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Computes the geometry of an arena from snapshots of the chunks around
+     * its center. Safe to call off the main thread.
+     *
+     * @param snapshots the snapshots, indexed by [chunk x - min][chunk z - min];
+     *                  null where a chunk hasn't been generated.
+     * @param minChunk the lowest chunk coordinate on each axis.
+     * @return the geometry, or null if the portal couldn't be found.
+     */
+    static ArenaGeometry compute(ChunkSnapshot[][] snapshots, int minChunk) {
+        Scan scan = new Scan(snapshots, minChunk);
+        int centerY = -1;
+        for (int y = scan.getTopY(0, 0); y >= MIN_PORTAL_Y; y--) {
+            if (scan.getType(0, y, 0) == Material.BEDROCK) {
+                centerY = y;
+                break;
+            }
+        }
+        if (centerY < 0) {
+            return null;
+        }
+
+        List<BlockVector> pillarTops = new ArrayList<>();
+        int radiusSquared = 0;
+        int min = minChunk << 4;
+        int max = min + (snapshots.length << 4);
+        for (int x = min; x < max; x++) {
+            for (int z = min; z < max; z++) {
+                int y = scan.getTopY(x, z);
+                if (y < 0) {
+                    continue;
+                }
+                int distanceSquared = x * x + z * z;
+                if (distanceSquared <= PORTAL_CLEARANCE * PORTAL_CLEARANCE) {
+                    continue;
+                }
+                if (distanceSquared <= MAX_PILLAR_DISTANCE * MAX_PILLAR_DISTANCE) {
+                    int pillarY = scan.findPillarTop(x, y, z);
+                    if (pillarY >= 0) {
+                        pillarTops.add(new BlockVector(x, pillarY, z));
+                        continue;
+                    }
+                }
+                if (scan.getType(x, y, z) == Material.END_STONE) {
+                    radiusSquared = Math.max(radiusSquared, distanceSquared);
+                }
+            }
+        }
+        int radius = (int) Math.ceil(Math.sqrt(radiusSquared));
+        return new ArenaGeometry(new BlockVector(0, centerY, 0), pillarTops, radius, System.currentTimeMillis());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the topmost bedrock block at the center of the exit portal.
+     *
+     * @param world the arena's world.
+     * @return the portal center.
+     */
+    Location getCenter(World world) {
+        return _center.toLocation(world);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the locations at which the crystals sit, one above each pillar
+     * top.
+     *
+     * @param world the arena's world.
+     * @return the crystal locations.
+     */
+    List<Location> getCrystalLocations(World world) {
+        List<Location> locations = new ArrayList<>(_pillarTops.size());
+        for (BlockVector top : _pillarTops) {
+            locations.add(new Location(world, top.getBlockX() + 0.5, top.getBlockY() + 1, top.getBlockZ() + 0.5));
+        }
+        return locations;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the number of pillars found.
+     *
+     * @return the number of pillars.
+     */
+    int getPillarCount() {
+        return _pillarTops.size();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the horizontal distance from the center to the island's
+     * furthest end stone column.
+     *
+     * @return the island's radius, in blocks.
+     */
+    int getRadius() {
+        return _radius;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Serializes this geometry.
+     *
+     * @param config the section to save to.
+     */
+    void save(ConfigurationSection config) {
+        config.set("center", toString(_center));
+        List<String> pillarTops = new ArrayList<>();
+        for (BlockVector top : _pillarTops) {
+            pillarTops.add(toString(top));
+        }
+        config.set("pillar-tops", pillarTops);
+        config.set("radius", _radius);
+        config.set("scanned-at", _scannedAt);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Deserializes a geometry.
+     *
+     * @param config the section to load from.
+     * @return the geometry, or null if the section is incomplete or malformed.
+     */
+    static ArenaGeometry load(ConfigurationSection config) {
+        try {
+            BlockVector center = fromString(config.getString("center"));
+            List<BlockVector> pillarTops = new ArrayList<>();
+            for (String top : config.getStringList("pillar-tops")) {
+                pillarTops.add(fromString(top));
+            }
+            return new ArenaGeometry(center, pillarTops, config.getInt("radius"), config.getLong("scanned-at"));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Formats a block position as "x,y,z".
+     *
+     * @param vector the position.
+     * @return the formatted position.
+     */
+    private static String toString(BlockVector vector) {
+        return vector.getBlockX() + "," + vector.getBlockY() + "," + vector.getBlockZ();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parses a block position of the form "x,y,z".
+     *
+     * @param string the formatted position.
+     * @return the position.
+     */
+    private static BlockVector fromString(String string) {
+        String[] parts = string.split(",");
+        return new BlockVector(Integer.valueOf(parts[0]), Integer.valueOf(parts[1]), Integer.valueOf(parts[2]));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Block lookups across a square of chunk snapshots, by world coordinates.
+     * Shared with {@link ArenaHeightmap}.
+     */
+    static final class Scan {
+
+        private final ChunkSnapshot[][] _snapshots;
+
+        private final int _minChunk;
+
+        Scan(ChunkSnapshot[][] snapshots, int minChunk) {
+            _snapshots = snapshots;
+            _minChunk = minChunk;
+        }
+
+        /**
+         * Returns the snapshot containing the given column, or null.
+         */
+        private ChunkSnapshot getSnapshot(int x, int z) {
+            int i = (x >> 4) - _minChunk;
+            int j = (z >> 4) - _minChunk;
+            if (i < 0 || j < 0 || i >= _snapshots.length || j >= _snapshots.length) {
+                return null;
+            }
+            return _snapshots[i][j];
+        }
+
+        /**
+         * Returns the type of the given block, or AIR outside the snapshots.
+         */
+        Material getType(int x, int y, int z) {
+            ChunkSnapshot snapshot = getSnapshot(x, z);
+            if (snapshot == null || y < 0 || y > 255) {
+                return Material.AIR;
+            }
+            return snapshot.getBlockType(x & 15, y, z & 15);
+        }
+
+        /**
+         * Returns the y of the highest solid block in the given column, or -1
+         * if it has none.
+         */
+        int getTopY(int x, int z) {
+            ChunkSnapshot snapshot = getSnapshot(x, z);
+            if (snapshot == null) {
+                return -1;
+            }
+            for (int y = Math.min(255, snapshot.getHighestBlockYAt(x & 15, z & 15)); y >= 0; y--) {
+                if (snapshot.getBlockType(x & 15, y, z & 15).isSolid()) {
+                    return y;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the y of the bedrock block atop a pillar in the given
+         * column, looking down through any cage from its highest solid
+         * block, or -1 if the column isn't a pillar top.
+         */
+        int findPillarTop(int x, int topY, int z) {
+            for (int y = topY; y >= topY - PILLAR_CAGE_HEIGHT && y >= MIN_PILLAR_Y; y--) {
+                if (getType(x, y, z) == Material.BEDROCK) {
+                    return y;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * The radius, in blocks, of the square of chunks scanned around the
+     * portal.
+     */
+    static final int SCAN_RADIUS = 96;
+
+    /**
+     * The horizontal distance from the center within which nothing counts as
+     * a pillar or counts toward the radius, to skip the portal itself.
+     */
+    private static final int PORTAL_CLEARANCE = 6;
+
+    /**
+     * The horizontal distance from the center beyond which nothing counts as
+     * a pillar, to skip the bedrock around the End Gateways.
+     */
+    private static final int MAX_PILLAR_DISTANCE = 80;
+
+    /**
+     * The lowest y at which the portal's bedrock is looked for.
+     */
+    private static final int MIN_PORTAL_Y = 6;
+
+    /**
+     * The lowest y at which a pillar top may be found. Crystals below it are
+     * not on pillars.
+     */
+    private static final int MIN_PILLAR_Y = 64;
+
+    /**
+     * How far below a column's highest solid block a pillar's bedrock top may
+     * be, to see through the iron bar cages.
+     */
+    private static final int PILLAR_CAGE_HEIGHT = 6;
+
+}
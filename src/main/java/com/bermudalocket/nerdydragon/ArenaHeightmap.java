@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// ------------------------------------------------------------------------
+/**
+ * The height of every column of an End world's arena, with a mask of the
+ * columns a mob can be spawned on (those topped with end stone). Built from
+ * chunk snapshots off the main thread, then kept up to date on the main
+ * thread as blocks change, so placing a spawn is an array lookup rather than
+ * a getHighestBlockYAt call which may load a chunk.
+ *
+ * Main thread only, once built.
+ */
+public final class ArenaHeightmap {
+
+    /**
+     * The y of the highest solid block in each column, or -1 if the column
+     * is empty, indexed by {@link #index(int, int)}.
+     */
+    private final short[] _heights = new short[SIZE * SIZE];
+
+    /**
+     * The columns a mob can be spawned on.
+     */
+    private final BitSet _spawnable = new BitSet(SIZE * SIZE);
+
+    /**
+     * The columns whose blocks have changed since the last refresh.
+     */
+    private final BitSet _dirty = new BitSet(SIZE * SIZE);
+
+    /**
+     * True if a refresh is scheduled for the next tick.
+     */
+    private boolean _refreshScheduled;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     */
+    private ArenaHeightmap() {
+        Arrays.fill(_heights, (short) -1);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Builds the heightmap of an arena from snapshots of the chunks around
+     * its center. Safe to call off the main thread.
+     *
+     * @param snapshots the snapshots, indexed by [chunk x - min][chunk z - min];
+     *                  null where a chunk hasn't been generated.
+     * @param minChunk the lowest chunk coordinate on each axis.
+     * @return the heightmap.
+     */
+    static ArenaHeightmap compute(ChunkSnapshot[][] snapshots, int minChunk) {
+        ArenaGeometry.Scan scan = new ArenaGeometry.Scan(snapshots, minChunk);
+        ArenaHeightmap heightmap = new ArenaHeightmap();
+        for (int x = -RADIUS; x < RADIUS; x++) {
+            for (int z = -RADIUS; z < RADIUS; z++) {
+                int y = scan.getTopY(x, z);
+                heightmap.set(x, z, y, y >= 0 && scan.getType(x, y, z) == Material.END_STONE);
+            }
+        }
+        return heightmap;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the y of the highest solid block in the given column.
+     *
+     * @param x the column's x.
+     * @param z the column's z.
+     * @return the y, or -1 if the column is empty or outside the arena.
+     */
+    int getHeight(int x, int z) {
+        return contains(x, z) ? _heights[index(x, z)] : -1;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if a mob can be spawned on top of the given column.
+     *
+     * @param x the column's x.
+     * @param z the column's z.
+     * @return true if the column is spawnable.
+     */
+    boolean isSpawnable(int x, int z) {
+        return contains(x, z) && _spawnable.get(index(x, z));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns a location the given height above a random spawnable column
+     * within the given square radius of the portal.
+     *
+     * @param world the arena's world.
+     * @param radius the radius.
+     * @param height the height above the column's top block.
+     * @return the location, or null if no spawnable column was found.
+     */
+    Location findSpawnLocation(World world, int radius, double height) {
+        for (int attempt = 0; attempt < SPAWN_ATTEMPTS; attempt++) {
+            int x = MathUtil.random(2 * radius) - radius;
+            int z = MathUtil.random(2 * radius) - radius;
+            if (isSpawnable(x, z)) {
+                return new Location(world, x + 0.5, _heights[index(x, z)] + height, z + 0.5);
+            }
+        }
+        return null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Notes that a block in the given column has changed. The column is
+     * re-read from the world on the next tick, after the change has been
+     * applied.
+     *
+     * @param world the arena's world.
+     * @param x the column's x.
+     * @param z the column's z.
+     */
+    void markDirty(World world, int x, int z) {
+        if (!contains(x, z)) {
+            return;
+        }
+        _dirty.set(index(x, z));
+        if (!_refreshScheduled) {
+            _refreshScheduled = true;
+            Thread.newThread(() -> refresh(world));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Re-reads the changed columns from the world. Columns whose chunk has
+     * unloaded keep their last height.
+     *
+     * @param world the arena's world.
+     */
+    private void refresh(World world) {
+        _refreshScheduled = false;
+        for (int i = _dirty.nextSetBit(0); i >= 0; i = _dirty.nextSetBit(i + 1)) {
+            int x = i / SIZE - RADIUS;
+            int z = i % SIZE - RADIUS;
+            if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+                continue;
+            }
+            int y = Math.min(MAX_Y, world.getHighestBlockYAt(x, z) + 1);
+            while (y >= 0 && !world.getBlockAt(x, y, z).getType().isSolid()) {
+                y--;
+            }
+            set(x, z, y, y >= 0 && world.getBlockAt(x, y, z).getType() == Material.END_STONE);
+        }
+        _dirty.clear();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Records a column's height and whether it is spawnable.
+     *
+     * @param x the column's x.
+     * @param z the column's z.
+     * @param y the y of its highest solid block, or -1.
+     * @param spawnable true if it is spawnable.
+     */
+    private void set(int x, int z, int y, boolean spawnable) {
+        int i = index(x, z);
+        _heights[i] = (short) y;
+        _spawnable.set(i, spawnable);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if the given column is within the arena.
+     *
+     * @param x the column's x.
+     * @param z the column's z.
+     * @return true if the column is within the arena.
+     */
+    private static boolean contains(int x, int z) {
+        return x >= -RADIUS && x < RADIUS && z >= -RADIUS && z < RADIUS;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the index of the given column in the arrays.
+     *
+     * @param x the column's x.
+     * @param z the column's z.
+     * @return the index.
+     */
+    private static int index(int x, int z) {
+        return (x + RADIUS) * SIZE + (z + RADIUS);
+    }
+
+    /**
+     * The half-width of the square of columns covered, centered on the
+     * portal.
+     */
+    private static final int RADIUS = ArenaGeometry.SCAN_RADIUS;
+
+    /**
+     * The width of the square of columns covered.
+     */
+    private static final int SIZE = 2 * RADIUS;
+
+    /**
+     * The highest block y.
+     */
+    private static final int MAX_Y = 255;
+
+    /**
+     * How many random columns to try when placing a spawn.
+     */
+    private static final int SPAWN_ATTEMPTS = 8;
+
+}
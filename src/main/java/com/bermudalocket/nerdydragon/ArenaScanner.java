@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+// ------------------------------------------------------------------------
+/**
+ * Scans End worlds for their {@link ArenaGeometry} and {@link ArenaHeightmap}.
+ * The arena's chunks are loaded asynchronously and snapshotted on the main
+ * thread; the snapshots are then analysed off it. The geometry is stored in
+ * the {@link StateFile}; the heightmap is kept here, rebuilt on startup and
+ * updated as blocks in the arena change. A world is scanned at most once at
+ * a time.
+ *
+ * Main thread only.
+ */
+public class ArenaScanner implements Listener {
+
+    /**
+     * The scans in progress, by world name.
+     */
+    private final HashMap<String, PendingScan> _scanning = new HashMap<>();
+
+    /**
+     * The built heightmaps, by world name.
+     */
+    private final HashMap<String, ArenaHeightmap> _heightmaps = new HashMap<>();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Scans the given world unless it already has a stored geometry and a
+     * heightmap.
+     *
+     * @param world the world.
+     */
+    void ensure(World world) {
+        boolean needsGeometry = NerdyDragon.STATE.getArenaGeometry(world) == null;
+        if (needsGeometry || !_heightmaps.containsKey(world.getName())) {
+            scan(world, needsGeometry, null);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Scans the given world, replacing its stored geometry and its heightmap.
+     * If the world is already being scanned, the callback waits on that scan
+     * instead.
+     *
+     * @param world the world.
+     * @param callback called on the main thread with the new geometry, or null
+     *                 if the portal couldn't be found; may be null.
+     */
+    public void scan(World world, Consumer<ArenaGeometry> callback) {
+        scan(world, true, callback);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the heightmap of the given world's arena.
+     *
+     * @param world the world.
+     * @return the heightmap, or null if it hasn't been built yet.
+     */
+    ArenaHeightmap getHeightmap(World world) {
+        return _heightmaps.get(world.getName());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Scans the given world, or joins the scan in progress.
+     *
+     * @param world the world.
+     * @param geometry true to compute the geometry as well as the heightmap.
+     * @param callback the callback, or null.
+     */
+    private void scan(World world, boolean geometry, Consumer<ArenaGeometry> callback) {
+        PendingScan pending = _scanning.get(world.getName());
+        if (pending != null) {
+            pending._geometry |= geometry;
+            if (callback != null) {
+                pending._callbacks.add(callback);
+            }
+            return;
+        }
+        PendingScan scan = new PendingScan(geometry);
+        if (callback != null) {
+            scan._callbacks.add(callback);
+        }
+        _scanning.put(world.getName(), scan);
+        NerdyDragon.log("Scanning the arena in " + world.getName() + "...");
+
+        int minChunk = Math.floorDiv(-ArenaGeometry.SCAN_RADIUS, 16);
+        int size = Math.floorDiv(ArenaGeometry.SCAN_RADIUS - 1, 16) - minChunk + 1;
+        ChunkSnapshot[][] snapshots = new ChunkSnapshot[size][size];
+        List<CompletableFuture<?>> loads = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                final int x = i, z = j;
+                loads.add(world.getChunkAtAsync(minChunk + i, minChunk + j, false).thenAccept(chunk -> {
+                    if (chunk != null) {
+                        snapshots[x][z] = chunk.getChunkSnapshot(true, false, false);
+                    }
+                }));
+            }
+        }
+        CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+            }
+            boolean computeGeometry = scan._geometry;
+            Thread.newAsyncThread(() -> {
+                ArenaHeightmap heightmap = ArenaHeightmap.compute(snapshots, minChunk);
+                ArenaGeometry arena = computeGeometry ? ArenaGeometry.compute(snapshots, minChunk) : null;
+                Thread.newThread(() -> finish(world, computeGeometry, arena, heightmap));
+            });
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Stores a finished scan's results and runs the callbacks waiting on it.
+     *
+     * @param world the scanned world.
+     * @param computedGeometry true if the geometry was computed.
+     * @param geometry the geometry, or null if it wasn't computed or the
+     *                 portal couldn't be found.
+     * @param heightmap the heightmap.
+     */
+    private void finish(World world, boolean computedGeometry, ArenaGeometry geometry, ArenaHeightmap heightmap) {
+        _heightmaps.put(world.getName(), heightmap);
+        if (geometry != null) {
+            NerdyDragon.STATE.setArenaGeometry(world, geometry);
+            NerdyDragon.log("Scanned the arena in " + world.getName() + ": " + geometry.getPillarCount() + " pillars, radius " +
+                            geometry.getRadius() + ".");
+        } else if (computedGeometry) {
+            NerdyDragon.log("Couldn't find the exit portal in " + world.getName() + "; its arena wasn't scanned.");
+        }
+        PendingScan scan = _scanning.remove(world.getName());
+        if (scan != null) {
+            ArenaGeometry result = computedGeometry ? geometry : NerdyDragon.STATE.getArenaGeometry(world);
+            scan._callbacks.forEach(callback -> callback.accept(result));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Notes a changed block in the heightmap of its world, if it has one.
+     *
+     * @param block the block.
+     */
+    private void blockChanged(Block block) {
+        ArenaHeightmap heightmap = _heightmaps.get(block.getWorld().getName());
+        if (heightmap != null) {
+            heightmap.markDirty(block.getWorld(), block.getX(), block.getZ());
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Notes a changed list of blocks, all in one world.
+     *
+     * @param blocks the blocks.
+     */
+    private void blocksChanged(List<Block> blocks) {
+        if (blocks.isEmpty()) {
+            return;
+        }
+        World world = blocks.get(0).getWorld();
+        ArenaHeightmap heightmap = _heightmaps.get(world.getName());
+        if (heightmap != null) {
+            for (Block block : blocks) {
+                heightmap.markDirty(world, block.getX(), block.getZ());
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Updates the heightmap when a block is placed.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent e) {
+        blockChanged(e.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Updates the heightmap when a block is broken.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent e) {
+        blockChanged(e.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Updates the heightmap when a block burns away.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent e) {
+        blockChanged(e.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Updates the heightmap when a block fades (e.g. melts).
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFade(BlockFadeEvent e) {
+        blockChanged(e.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Updates the heightmap when a block forms (e.g. obsidian from lava).
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockForm(BlockFormEvent e) {
+        blockChanged(e.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Updates the heightmap when an entity changes a block, e.g. an enderman
+     * or a falling block.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent e) {
+        blockChanged(e.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Updates the heightmap when an entity's explosion destroys blocks.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent e) {
+        blocksChanged(e.blockList());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Updates the heightmap when a block's explosion destroys blocks.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent e) {
+        blocksChanged(e.blockList());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Drops the heightmap of a world when it unloads.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent e) {
+        _heightmaps.remove(e.getWorld().getName());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * A scan in progress.
+     */
+    private static final class PendingScan {
+
+        /**
+         * True if the geometry is to be computed as well as the heightmap.
+         */
+        boolean _geometry;
+
+        /**
+         * The callbacks waiting on the scan.
+         */
+        final List<Consumer<ArenaGeometry>> _callbacks = new ArrayList<>();
+
+        PendingScan(boolean geometry) {
+            _geometry = geometry;
+        }
+
+    }
+
+}
@@ -6,161 +6,317 @@
  */
 package com.bermudalocket.nerdydragon;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import org.bukkit.Bukkit;
-import org.bukkit.ChatColor;
-import org.bukkit.Location;
-import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.entity.EnderCrystal;
-import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Objects;
-import java.util.UUID;
-import java.util.stream.Collectors;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 
 /**
- * Handles the plugin configuration.
+ * An immutable, validated snapshot of the plugin configuration. Snapshots are
+ * parsed from config.yml off the main thread and published by replacing
+ * {@link NerdyDragon#CONFIG}, so a reader which takes that reference once
+ * sees a single consistent configuration, however long a reload takes.
+ *
+ * Runtime state (pillar locations and saved fights) is kept in the
+ * {@link StateFile}, not here.
  */
-public class Configuration {
+public final class Configuration {
 
     /**
      * If this plugin's hook (CreatureSpawnEvent in main class) is active.
      */
-    public boolean ENABLED;
+    public final boolean ENABLED;
 
     /**
-     * The set of worlds in which the dragon death sound will be played.
+     * The names of the worlds in which the dragon death sound will be played.
      */
-    private HashSet<UUID> MIRROR_DRAGON_DEATH_WORLDS = new HashSet<>();
+    private final ImmutableSet<String> MIRROR_DRAGON_DEATH_WORLDS;
 
     /**
-     * The locations at which the End Crystals spawn at the start of a dragon fight.
+     * The worlds which host fights, by name.
      */
-    HashSet<Location> ENDER_CRYSTAL_PILLAR_LOCATIONS = new HashSet<>();
+    private final ImmutableMap<String, WorldConfiguration> WORLDS;
 
-    // ------------------------------------------------------------------------
     /**
-     * Constructor.
+     * The UUIDs of the players whose heads are worn by Vexes, as strings.
      */
-    public Configuration() {
-        reload();
-    }
+    private final ImmutableList<String> ADMIN_HEADS;
+
+    /**
+     * The loot table for fights with a single participant.
+     */
+    private final LootTable SOLO_LOOT;
+
+    /**
+     * The loot table for fights with more than one participant.
+     */
+    private final LootTable GROUP_LOOT;
 
-    // ------------------------------------------------------------------------
     /**
-     * Reloads the plugin configuration.
+     * If true, the dragon favours the players who have dealt it the most
+     * damage when choosing whom to attack; otherwise it chooses uniformly.
      */
-    public void reload() {
-        NerdyDragon.log("Reloading configuration.");
-        NerdyDragon.PLUGIN.saveDefaultConfig();
-        NerdyDragon.PLUGIN.reloadConfig();
-        FileConfiguration config = NerdyDragon.PLUGIN.getConfig();
+    final boolean TARGET_BY_DAMAGE;
 
+    /**
+     * The fight history format, "yaml", "binary" or "sqlite". Only read when
+     * the leaderboard is created, so changing it requires a restart.
+     */
+    final String LEADERBOARD_FORMAT;
+
+    /**
+     * How fight entities are tagged, "entitymeta" or "persistent-data". Only
+     * read on startup, so changing it requires a restart.
+     */
+    final String ENTITY_TAG_STORE;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parses a configuration.
+     *
+     * @param config the configuration, with the bundled defaults attached.
+     */
+    private Configuration(FileConfiguration config) {
         ENABLED = config.getBoolean("enabled", true);
 
-        MIRROR_DRAGON_DEATH_WORLDS = config.getStringList("mirror-dragon-death-sound")
-                                           .stream()
-                                           .map(Bukkit::getWorld)
-                                           .filter(Objects::nonNull)
-                                           .map(World::getUID)
-                                           .collect(Collectors.toCollection(HashSet::new));
-
-        for (String locString : config.getStringList("ender-crystal-pillar-locations")) {
-            String[] parts = locString.split(",");
-            int x = Integer.valueOf(parts[0]);
-            int y = Integer.valueOf(parts[1]);
-            int z = Integer.valueOf(parts[2]);
-            NerdyDragon.log("Loaded regeneration point: (" + x + ", " + y + ", " + z + ")");
-            ENDER_CRYSTAL_PILLAR_LOCATIONS.add(new Location(Util.WORLD_THE_END, x, y, z));
+        MIRROR_DRAGON_DEATH_WORLDS = ImmutableSet.copyOf(config.getStringList("mirror-dragon-death-sound"));
+
+        LootTable soloLoot = LootTable.compile(config.getConfigurationSection("loot.solo"));
+        if (soloLoot == null) {
+            NerdyDragon.log("No solo loot table configured; using the default.");
+            soloLoot = LootTable.getDefault();
         }
+        SOLO_LOOT = soloLoot;
+        LootTable groupLoot = LootTable.compile(config.getConfigurationSection("loot.group"));
+        if (groupLoot == null) {
+            NerdyDragon.log("No group loot table configured; using the default.");
+            groupLoot = LootTable.getDefault();
+        }
+        GROUP_LOOT = groupLoot;
+
+        TARGET_BY_DAMAGE = config.getBoolean("targeting.weight-by-damage", false);
 
-        NerdyDragon.log("Configuration successfully reloaded.");
+        WORLDS = loadWorlds(config, TARGET_BY_DAMAGE);
+
+        String leaderboardFormat = config.getString("leaderboard.format", "yaml").toLowerCase();
+        if (!LEADERBOARD_FORMATS.contains(leaderboardFormat)) {
+            NerdyDragon.log("Unknown leaderboard format \"" + leaderboardFormat + "\"; using yaml.");
+            leaderboardFormat = "yaml";
+        }
+        LEADERBOARD_FORMAT = leaderboardFormat;
+
+        ENTITY_TAG_STORE = config.getString("entity-tags.store", EntityMetaTagStore.NAME);
+
+        ADMIN_HEADS = ImmutableList.copyOf(config.getStringList("admin-heads"));
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Soft-enables/disables the plugin, i.e. the main CreatureSpawnEvent
-     * listener in the main plugin class will short-circuit.
+     * Copies a configuration, changing whether the plugin is enabled.
+     *
+     * @param other the configuration to copy.
+     * @param enabled if the plugin is enabled.
      */
-    public void setEnabled(boolean enabled) {
+    private Configuration(Configuration other, boolean enabled) {
         ENABLED = enabled;
-        NerdyDragon.PLUGIN.getConfig().set("enabled", enabled);
-        NerdyDragon.PLUGIN.saveConfig();
+        MIRROR_DRAGON_DEATH_WORLDS = other.MIRROR_DRAGON_DEATH_WORLDS;
+        WORLDS = other.WORLDS;
+        ADMIN_HEADS = other.ADMIN_HEADS;
+        SOLO_LOOT = other.SOLO_LOOT;
+        GROUP_LOOT = other.GROUP_LOOT;
+        TARGET_BY_DAMAGE = other.TARGET_BY_DAMAGE;
+        LEADERBOARD_FORMAT = other.LEADERBOARD_FORMAT;
+        ENTITY_TAG_STORE = other.ENTITY_TAG_STORE;
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Returns an immutable set of the dragon fight loot.
-     * TODO - make configurable
+     * Reads and parses the given configuration file. Blocks; safe to call off
+     * the main thread.
      *
-     * @return the loot.
-     */
-    ImmutableSet<ItemStack> getLoot() {
-        ItemStack wings = new ItemStack(Material.ELYTRA, 1);
-        ItemMeta meta = wings.getItemMeta();
-        meta.setLore(Collections.singletonList(ChatColor.DARK_PURPLE + "I Survived The Dragon Fight!"));
-        wings.setItemMeta(meta);
-        return ImmutableSet.of(wings, new ItemStack(Material.DRAGON_HEAD, 1));
+     * @param file the configuration file.
+     * @return the parsed configuration.
+     * @throws IOException if the file can't be read.
+     * @throws InvalidConfigurationException if the file isn't valid YAML.
+     */
+    static Configuration load(File file) throws IOException, InvalidConfigurationException {
+        YamlConfiguration config = new YamlConfiguration();
+        config.load(file);
+        config.setDefaults(loadBundledDefaults());
+        return new Configuration(config);
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Saves the spawn locations of the crystals atop the end pillars for
-     * regeneration.
+     * Returns a configuration made of the bundled defaults alone, for when
+     * the configuration file can't be read on startup.
      *
-     * @param locations the locations to save.
-     */
-    void saveEnderCrystalPillarLocations(HashSet<EnderCrystal> locations) {
-        ENDER_CRYSTAL_PILLAR_LOCATIONS.clear();
-        FileConfiguration config = NerdyDragon.PLUGIN.getConfig();
-        List<String> stringList = new ArrayList<>();
-        for (EnderCrystal crystal : locations) {
-            Location location = crystal.getLocation();
-            ENDER_CRYSTAL_PILLAR_LOCATIONS.add(location);
-            String coordString = location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ();
-            NerdyDragon.log("Saved regeneration point: (" + coordString + ")");
-            stringList.add(coordString);
-        }
-        config.set("ender-crystal-pillar-locations", stringList);
-        NerdyDragon.PLUGIN.saveConfig();
+     * @return the default configuration.
+     */
+    static Configuration getDefault() {
+        return new Configuration(loadBundledDefaults());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns a copy of this configuration with the plugin enabled or
+     * disabled.
+     *
+     * @param enabled if the plugin is enabled.
+     * @return the copy.
+     */
+    Configuration withEnabled(boolean enabled) {
+        return new Configuration(this, enabled);
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Returns a set of worlds in which the dragon death sound should be played.
+     * Writes whether the plugin is enabled to the given configuration file,
+     * leaving the rest of it as it is on disk. Blocks; call off the main
+     * thread.
      *
-     * @return a set of worlds in which the dragon death sound should be played.
+     * @param file the configuration file.
+     * @param enabled if the plugin is enabled.
+     * @throws IOException if the file can't be read or written.
+     * @throws InvalidConfigurationException if the file isn't valid YAML.
      */
-    HashSet<World> getMirrorWorlds() {
-        return MIRROR_DRAGON_DEATH_WORLDS.stream()
-            .map(Bukkit::getWorld)
-            .filter(Objects::nonNull)
-            .collect(Collectors.toCollection(HashSet::new));
+    static void saveEnabled(File file, boolean enabled) throws IOException, InvalidConfigurationException {
+        YamlConfiguration config = new YamlConfiguration();
+        config.load(file);
+        config.set("enabled", enabled);
+        config.save(file);
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Returns the requested configuration section. If the section does not
-     * exist, it is created.
+     * Loads the worlds which host fights. Configurations written before
+     * fights could run in more than one world have no worlds section; they
+     * get the default End world. The section is looked up without falling
+     * back to the defaults, since getConfigurationSection would otherwise
+     * create an empty section for it from the bundled defaults' worlds.
      *
-     * @param key the name of the section.
-     * @return the configuration section.
-     */
-    static ConfigurationSection getOrCreateSection(String key) {
-        FileConfiguration config = NerdyDragon.PLUGIN.getConfig();
-        ConfigurationSection section = config.getConfigurationSection(key);
-        if (section == null) {
-            section = config.createSection(key);
+     * @param config the configuration.
+     * @param targetByDamage the global targeting setting.
+     * @return the worlds, by name.
+     */
+    private static ImmutableMap<String, WorldConfiguration> loadWorlds(FileConfiguration config, boolean targetByDamage) {
+        Object worldsValue = config.get("worlds", null);
+        if (!(worldsValue instanceof ConfigurationSection)) {
+            return ImmutableMap.of(DEFAULT_WORLD, new WorldConfiguration(DEFAULT_WORLD, null, targetByDamage));
+        }
+        ConfigurationSection section = (ConfigurationSection) worldsValue;
+        ImmutableMap.Builder<String, WorldConfiguration> worlds = ImmutableMap.builder();
+        for (String name : section.getKeys(false)) {
+            worlds.put(name, new WorldConfiguration(name, section.getConfigurationSection(name), targetByDamage));
         }
-        return section;
+        return worlds.build();
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Loads the configuration bundled with the plugin.
+     *
+     * @return the bundled configuration, or an empty one if it's missing.
+     */
+    private static YamlConfiguration loadBundledDefaults() {
+        InputStream stream = NerdyDragon.PLUGIN.getResource("config.yml");
+        if (stream == null) {
+            return new YamlConfiguration();
+        }
+        try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            return YamlConfiguration.loadConfiguration(reader);
+        } catch (IOException e) {
+            return new YamlConfiguration();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the configuration of the given world.
+     *
+     * @param world the world.
+     * @return the world's configuration, or null if it doesn't host fights.
+     */
+    WorldConfiguration getWorld(World world) {
+        return world == null ? null : WORLDS.get(world.getName());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if fights are run in the given world.
+     *
+     * @param world the world.
+     * @return true if fights are run in the given world.
+     */
+    boolean isFightWorld(World world) {
+        WorldConfiguration worldConfig = getWorld(world);
+        return worldConfig != null && worldConfig.ENABLED;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if the dragon in the given world weights its targets by
+     * damage dealt.
+     *
+     * @param world the world.
+     * @return true if the dragon in the given world weights its targets.
+     */
+    boolean isTargetingByDamage(World world) {
+        WorldConfiguration worldConfig = getWorld(world);
+        return worldConfig != null ? worldConfig.TARGET_BY_DAMAGE : TARGET_BY_DAMAGE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the compiled loot table for solo or group fights.
+     *
+     * @param solo true for solo fights, false for group fights.
+     * @return the loot table.
+     */
+    LootTable getLootTable(boolean solo) {
+        return solo ? SOLO_LOOT : GROUP_LOOT;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the names of the worlds in which the dragon death sound is
+     * mirrored.
+     *
+     * @return the world names.
+     */
+    ImmutableSet<String> getMirrorWorldNames() {
+        return MIRROR_DRAGON_DEATH_WORLDS;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the UUIDs of the players whose heads are worn by Vexes.
+     *
+     * @return the UUIDs, as strings.
+     */
+    ImmutableList<String> getAdminHeadIds() {
+        return ADMIN_HEADS;
+    }
+
+    /**
+     * The End world fights ran in before they could run in more than one.
+     */
+    static final String DEFAULT_WORLD = "world_the_end";
+
+    /**
+     * The supported fight history formats.
+     */
+    private static final ImmutableSet<String> LEADERBOARD_FORMATS = ImmutableSet.of("yaml", "binary", "sqlite");
+
 }
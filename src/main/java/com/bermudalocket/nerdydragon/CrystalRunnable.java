@@ -6,6 +6,7 @@
  */
 package com.bermudalocket.nerdydragon;
 
+import com.bermudalocket.nerdydragon.recorder.FightEvent;
 import com.google.common.collect.ImmutableSet;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -22,7 +23,9 @@ import org.bukkit.potion.PotionEffectType;
 import org.bukkit.scheduler.BukkitTask;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 // ------------------------------------------------------------------------
 /**
@@ -129,7 +132,6 @@ public class CrystalRunnable implements Runnable {
         crystalSection.set("target", (_target != null) ? _target.getUniqueId().toString() : null);
         crystalSection.set("current-delay", _mainDelay);
         crystalSection.set("action-delay", _subDelay);
-        NerdyDragon.PLUGIN.saveConfig();
     }
 
     // ------------------------------------------------------------------------
@@ -148,8 +150,9 @@ public class CrystalRunnable implements Runnable {
      * fight world by their physical location.
      */
     private void initCrystals() {
-        if (NerdyDragon.CONFIG.ENDER_CRYSTAL_PILLAR_LOCATIONS.size() == 10) {
-            for (Location location : NerdyDragon.CONFIG.ENDER_CRYSTAL_PILLAR_LOCATIONS) {
+        HashSet<Location> pillarLocations = getPillarLocations();
+        if (pillarLocations.size() == 10) {
+            for (Location location : pillarLocations) {
                 boolean matched = false;
                 for (EnderCrystal crystal : _fight.getWorld().getEntitiesByClass(EnderCrystal.class)) {
                     if (Util.weaklyCompareLocations(location, crystal.getLocation())) {
@@ -176,12 +179,29 @@ public class CrystalRunnable implements Runnable {
                     NerdyDragon.log("Init crystal: " + crystal);
                 }
             }
-            if (NerdyDragon.CONFIG.ENDER_CRYSTAL_PILLAR_LOCATIONS.size() < 10) {
-                NerdyDragon.CONFIG.saveEnderCrystalPillarLocations(new HashSet<>(ENDER_CRYSTALS));
+            if (pillarLocations.size() < 10) {
+                List<Location> locations = ENDER_CRYSTALS.stream().map(EnderCrystal::getLocation).collect(Collectors.toList());
+                NerdyDragon.STATE.setPillarLocations(_fight.getWorld(), locations);
             }
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the crystal locations atop the pillars in the fight's world:
+     * those of the scanned arena if it has pillars, or else those recorded
+     * from earlier fights.
+     *
+     * @return a new set of the pillar locations; empty if none are known.
+     */
+    private HashSet<Location> getPillarLocations() {
+        ArenaGeometry arena = NerdyDragon.STATE.getArenaGeometry(_fight.getWorld());
+        if (arena != null && arena.getPillarCount() > 0) {
+            return new HashSet<>(arena.getCrystalLocations(_fight.getWorld()));
+        }
+        return NerdyDragon.STATE.getPillarLocations(_fight.getWorld());
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Initializes this runnable by locating and storing all crystals in the
@@ -202,7 +222,7 @@ public class CrystalRunnable implements Runnable {
         if (ENDER_CRYSTALS.size() >= 10) {
             return;
         }
-        HashSet<Location> generationSpots = new HashSet<>(NerdyDragon.CONFIG.ENDER_CRYSTAL_PILLAR_LOCATIONS);
+        HashSet<Location> generationSpots = getPillarLocations();
         for (EnderCrystal crystal : ENDER_CRYSTALS) {
             Location loc = crystal.getLocation();
             generationSpots.removeIf(regenSpot -> loc.getBlockX() == regenSpot.getBlockX()
@@ -257,7 +277,9 @@ public class CrystalRunnable implements Runnable {
      * @param player the player who blew up the crystal.
      */
     void handleCrystalDeath(EnderCrystal crystal, Player player) {
-        ENDER_CRYSTALS.remove(crystal);
+        if (ENDER_CRYSTALS.remove(crystal)) {
+            _fight.getRecorder().record(FightEvent.CRYSTAL_DEATH, ENDER_CRYSTALS.size(), 0, (player != null) ? player.getUniqueId() : null);
+        }
         // check if it's time for stage 2
         if (ENDER_CRYSTALS.size() == 0) {
             _fight.setStage(FightStage.SECOND);
@@ -362,7 +384,7 @@ public class CrystalRunnable implements Runnable {
                 // crystals are done focusing on the player & are ready to deal damage
                 case ATTACK_PLAYER:
                     if (_target != null && _target.isOnline()) {
-                        Util.WORLD_THE_END.playSound(_target.getLocation(), Sound.BLOCK_END_PORTAL_SPAWN, 6, 1.5f);
+                        _fight.getWorld().playSound(_target.getLocation(), Sound.BLOCK_END_PORTAL_SPAWN, 6, 1.5f);
                         _target.damage(MathUtil.gaussian(6.5, 1.39), _masterCrystal);
                         _target.removePotionEffect(PotionEffectType.LEVITATION);
                     }
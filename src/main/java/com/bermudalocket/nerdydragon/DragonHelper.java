@@ -16,7 +16,6 @@ import org.bukkit.entity.EnderDragon;
 import org.bukkit.entity.Player;
 import org.bukkit.event.entity.EntityTargetEvent;
 
-import java.util.HashMap;
 import java.util.UUID;
 
 // ------------------------------------------------------------------------
@@ -104,22 +103,24 @@ public class DragonHelper {
 
     // ------------------------------------------------------------------------
     /**
-     * Directs the dragon to shoot a fireball at a random player.
+     * Directs the dragon to shoot a fireball at a player chosen by the fight's
+     * targeting service.
      *
      * @param fight the associated fight.
      */
     static void fireballRandomPlayer(EnderDragonFight fight) {
-        attackPlayer(findRandomTarget(fight), EnderDragon.Phase.STRAFING, fight);
+        attackPlayer(fight.getTargeting().next(), EnderDragon.Phase.STRAFING, fight);
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Directs the dragon to charge a random player.
+     * Directs the dragon to charge a player chosen by the fight's targeting
+     * service.
      *
      * @param fight the associated fight.
      */
     static void chargeRandomPlayer(EnderDragonFight fight) {
-        attackPlayer(findRandomTarget(fight), EnderDragon.Phase.CHARGE_PLAYER, fight);
+        attackPlayer(fight.getTargeting().next(), EnderDragon.Phase.CHARGE_PLAYER, fight);
     }
 
     // ------------------------------------------------------------------------
@@ -152,40 +153,4 @@ public class DragonHelper {
         dragon.setPhase(phase);
     }
 
-    // ------------------------------------------------------------------------
-    /**
-     * Begins a search for a random player to target.
-     *
-     * @param fight the associated fight.
-     * @return a random player to target.
-     */
-    static Player findRandomTarget(EnderDragonFight fight) {
-        UUID searchUUID = UUID.randomUUID();
-        Player player = MathUtil.getRandomObject(fight.getNearbyPlayers());
-        if (fight.inRange(player)) {
-            return player;
-        } else {
-            _findTargetAttempts.put(searchUUID, 1);
-            return findRandomTarget(fight, searchUUID); // try again
-        }
-    }
-
-    private static Player findRandomTarget(EnderDragonFight fight, UUID searchUUID) {
-        int attempts = _findTargetAttempts.get(searchUUID);
-        if (attempts > 3) {
-            _findTargetAttempts.remove(searchUUID);
-            return null;
-        }
-        Player player = MathUtil.getRandomObject(fight.getNearbyPlayers());
-        if (fight.inRange(player)) {
-            _findTargetAttempts.remove(searchUUID);
-            return player;
-        } else {
-            _findTargetAttempts.put(searchUUID, attempts + 1);
-            return findRandomTarget(fight, searchUUID); // try again
-        }
-    }
-
-    private static final HashMap<UUID, Integer> _findTargetAttempts = new HashMap<>();
-
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * Chooses players for the dragon to attack. The candidates (the living
+ * players near the portal) are cached once per tick by the fight, so picking
+ * a target is O(1): a uniform draw, or, if weighting by damage is enabled, a
+ * draw from an alias table built at refresh time, so players who have dealt
+ * the most damage are targeted the most often.
+ *
+ * Main thread only. The arrays are reused between refreshes.
+ */
+public class DragonTargeting {
+
+    /**
+     * Added to every candidate's damage when weighting, so players who
+     * haven't dealt damage yet can still be targeted.
+     */
+    private static final double BASE_WEIGHT = 1.0;
+
+    private Player[] _candidates = new Player[8];
+
+    /**
+     * The number of valid entries in _candidates.
+     */
+    private int _count;
+
+    /**
+     * The alias table: candidate i is kept with probability _keep[i] and
+     * otherwise swapped for candidate _alias[i].
+     */
+    private double[] _keep = new double[8];
+
+    private int[] _alias = new int[8];
+
+    /**
+     * Scratch space for building the alias table.
+     */
+    private double[] _scaled = new double[8];
+
+    private int[] _small = new int[8];
+
+    private int[] _large = new int[8];
+
+    /**
+     * True if the alias table is in use for the current candidates.
+     */
+    private boolean _weighted;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Replaces the candidates.
+     *
+     * @param players the players near the portal.
+     * @param damage the damage each player has dealt this fight.
+     * @param weightByDamage true to favour the players who have dealt the
+     *                       most damage.
+     */
+    void refresh(Collection<Player> players, Map<UUID, Double> damage, boolean weightByDamage) {
+        ensureCapacity(players.size());
+        _count = 0;
+        for (Player player : players) {
+            if (player.isOnline() && !player.isDead()) {
+                _candidates[_count++] = player;
+            }
+        }
+        Arrays.fill(_candidates, _count, _candidates.length, null);
+        _weighted = weightByDamage && _count > 1;
+        if (_weighted) {
+            buildAliasTable(damage);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns a target, or null if there are no candidates. A candidate who
+     * has died or left since the last refresh is not replaced; null is
+     * returned instead.
+     *
+     * @return a target, or null.
+     */
+    Player next() {
+        if (_count == 0) {
+            return null;
+        }
+        int i = MathUtil.random(_count - 1);
+        if (_weighted && MathUtil.nextDouble() >= _keep[i]) {
+            i = _alias[i];
+        }
+        Player player = _candidates[i];
+        return (player.isOnline() && !player.isDead()) ? player : null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Builds the alias table for the current candidates (Vose's method).
+     *
+     * @param damage the damage each player has dealt this fight.
+     */
+    private void buildAliasTable(Map<UUID, Double> damage) {
+        double total = 0;
+        for (int i = 0; i < _count; i++) {
+            double weight = BASE_WEIGHT + Math.max(0, damage.getOrDefault(_candidates[i].getUniqueId(), 0.0));
+            _scaled[i] = weight;
+            total += weight;
+        }
+        int small = 0, large = 0;
+        for (int i = 0; i < _count; i++) {
+            _scaled[i] *= _count / total;
+            if (_scaled[i] < 1) {
+                _small[small++] = i;
+            } else {
+                _large[large++] = i;
+            }
+        }
+        while (small > 0 && large > 0) {
+            int less = _small[--small];
+            int more = _large[--large];
+            _keep[less] = _scaled[less];
+            _alias[less] = more;
+            _scaled[more] = (_scaled[more] + _scaled[less]) - 1;
+            if (_scaled[more] < 1) {
+                _small[small++] = more;
+            } else {
+                _large[large++] = more;
+            }
+        }
+        while (large > 0) {
+            _keep[_large[--large]] = 1;
+        }
+        while (small > 0) {
+            _keep[_small[--small]] = 1; // rounding error
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Grows the arrays, if necessary, to hold the given number of candidates.
+     *
+     * @param size the number of candidates.
+     */
+    private void ensureCapacity(int size) {
+        if (size <= _candidates.length) {
+            return;
+        }
+        int capacity = Math.max(size, 2 * _candidates.length);
+        _candidates = Arrays.copyOf(_candidates, capacity);
+        _keep = new double[capacity];
+        _alias = new int[capacity];
+        _scaled = new double[capacity];
+        _small = new int[capacity];
+        _large = new int[capacity];
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.entity.Player;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.util.EnumMap;
+
+// ------------------------------------------------------------------------
+/**
+ * An immutable pool of the retaliatory effects for one stage: every negative
+ * effect at every duration the stage allows, built once, so picking one is a
+ * single array read. Pools are built the first time their stage is entered
+ * and shared by every fight after that.
+ *
+ * Main thread only.
+ */
+final class EffectPool {
+
+    /**
+     * The kinds of effect in a pool.
+     */
+    enum Kind {
+        /**
+         * A potion effect.
+         */
+        POTION,
+
+        /**
+         * Setting the player on fire.
+         */
+        FIRE
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * One prebuilt effect.
+     */
+    static final class Effect {
+
+        private final Kind _kind;
+
+        private final PotionEffect _potionEffect;
+
+        private final int _ticks;
+
+        private Effect(Kind kind, PotionEffect potionEffect, int ticks) {
+            _kind = kind;
+            _potionEffect = potionEffect;
+            _ticks = ticks;
+        }
+
+        // --------------------------------------------------------------------
+        /**
+         * Applies this effect to the given player.
+         *
+         * @param player the player.
+         */
+        void apply(Player player) {
+            if (_kind == Kind.FIRE) {
+                player.setFireTicks(_ticks);
+            } else {
+                _potionEffect.apply(player);
+            }
+        }
+
+    }
+
+    /**
+     * The negative potion effects that can be applied in retaliation.
+     */
+    private static final PotionEffectType[] NEGATIVE_EFFECTS = {
+        PotionEffectType.BLINDNESS,
+        PotionEffectType.LEVITATION,
+        PotionEffectType.SLOW,
+        PotionEffectType.WEAKNESS,
+        PotionEffectType.WITHER,
+        PotionEffectType.POISON
+    };
+
+    /**
+     * The shortest effect, in seconds. Each stage adds up to
+     * {@link FightStage#MAX_EXTRA_POTION_DUR} seconds to this.
+     */
+    private static final int BASE_DURATION = 3;
+
+    /**
+     * The pools built so far, by stage.
+     */
+    private static final EnumMap<FightStage, EffectPool> POOLS = new EnumMap<>(FightStage.class);
+
+    /**
+     * Every effect for players, fire included.
+     */
+    private final Effect[] _effects;
+
+    /**
+     * Every potion effect, for clouds, which can't set players on fire.
+     */
+    private final PotionEffect[] _potionEffects;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the pool for the given stage, building it if necessary.
+     *
+     * @param stage the stage.
+     * @return the pool.
+     */
+    static EffectPool forStage(FightStage stage) {
+        return POOLS.computeIfAbsent(stage, EffectPool::new);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Builds the pool for the given stage: every effect kind at every whole
+     * number of seconds from BASE_DURATION to BASE_DURATION plus the stage's
+     * extra duration, so a uniform pick matches a uniform kind and duration.
+     *
+     * @param stage the stage.
+     */
+    private EffectPool(FightStage stage) {
+        int durations = stage.MAX_EXTRA_POTION_DUR + 1;
+        _potionEffects = new PotionEffect[NEGATIVE_EFFECTS.length * durations];
+        _effects = new Effect[(NEGATIVE_EFFECTS.length + 1) * durations];
+        int i = 0;
+        for (int d = 0; d < durations; d++) {
+            int ticks = 20 * (BASE_DURATION + d);
+            for (PotionEffectType type : NEGATIVE_EFFECTS) {
+                PotionEffect potionEffect = new PotionEffect(type, ticks, 1, false, true, true);
+                _potionEffects[i] = potionEffect;
+                _effects[i] = new Effect(Kind.POTION, potionEffect, ticks);
+                i++;
+            }
+        }
+        for (int d = 0; d < durations; d++) {
+            _effects[i++] = new Effect(Kind.FIRE, null, 20 * (BASE_DURATION + d));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns a random effect for a player.
+     *
+     * @return a random effect.
+     */
+    Effect next() {
+        return _effects[MathUtil.random(_effects.length - 1)];
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns a random potion effect.
+     *
+     * @return a random potion effect.
+     */
+    PotionEffect nextPotionEffect() {
+        return _potionEffects[MathUtil.random(_potionEffects.length - 1)];
+    }
+
+}
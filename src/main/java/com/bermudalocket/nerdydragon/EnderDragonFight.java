@@ -7,13 +7,15 @@
  */
 package com.bermudalocket.nerdydragon;
 
+import com.bermudalocket.nerdydragon.recorder.FightEvent;
+import com.bermudalocket.nerdydragon.recorder.FightRecorder;
 import com.bermudalocket.nerdydragon.tasks.AbsorbProjectileTask;
 import com.bermudalocket.nerdydragon.tasks.LeavePortalTask;
-import com.bermudalocket.nerdydragon.tasks.RainFireTask;
 import com.bermudalocket.nerdydragon.tasks.ReinforcementSpawnTask;
 import com.destroystokyo.paper.event.entity.EnderDragonFireballHitEvent;
 import com.destroystokyo.paper.event.entity.EnderDragonFlameEvent;
 import com.destroystokyo.paper.event.entity.EnderDragonShootFireballEvent;
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
 import org.apache.commons.lang.time.DurationFormatUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -28,7 +30,6 @@ import org.bukkit.boss.BarStyle;
 import org.bukkit.boss.BossBar;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.AreaEffectCloud;
-import org.bukkit.entity.DragonFireball;
 import org.bukkit.entity.EnderCrystal;
 import org.bukkit.entity.EnderDragon;
 import org.bukkit.entity.Entity;
@@ -39,10 +40,6 @@ import org.bukkit.entity.Projectile;
 import org.bukkit.entity.Shulker;
 import org.bukkit.entity.ShulkerBullet;
 import org.bukkit.entity.Vex;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.EventPriority;
-import org.bukkit.event.HandlerList;
-import org.bukkit.event.Listener;
 import org.bukkit.event.entity.AreaEffectCloudApplyEvent;
 import org.bukkit.event.entity.CreatureSpawnEvent;
 import org.bukkit.event.entity.EnderDragonChangePhaseEvent;
@@ -54,18 +51,23 @@ import org.bukkit.event.entity.EntityUnleashEvent;
 import org.bukkit.event.entity.ProjectileLaunchEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.projectiles.ProjectileSource;
-import org.bukkit.util.Vector;
+import org.bukkit.scheduler.BukkitTask;
 
+import java.io.File;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
 
 // ------------------------------------------------------------------------
 /**
- * Represents an instance of an EnderDragon fight.
+ * Represents an instance of an EnderDragon fight. The fight's event handlers
+ * are called by {@link FightEventRouter} while the fight is in progress.
  */
-public class EnderDragonFight implements Listener {
+public class EnderDragonFight {
 
     /**
      * This fight's unique identifier.
@@ -78,9 +80,10 @@ public class EnderDragonFight implements Listener {
     private EnderDragon _dragon;
 
     /**
-     * This fight's current stage.
+     * This fight's current stage. Volatile so that async tasks can check
+     * whether the fight is still active.
      */
-    private FightStage _stage = FightStage.FIRST;
+    private volatile FightStage _stage = FightStage.FIRST;
 
     /**
      * A timer runnable which facilitates the crystal stage. May be null if
@@ -109,6 +112,12 @@ public class EnderDragonFight implements Listener {
      */
     private UUID _lastDamagedBy;
 
+    /**
+     * True while a forced end is killing the dragon, so its death awards no
+     * loot and isn't added to the leaderboard.
+     */
+    private boolean _forcedEnd;
+
     /**
      * The unix timestamp recorded at the very beginning of this fight. Used
      * to time the fight.
@@ -121,6 +130,80 @@ public class EnderDragonFight implements Listener {
      */
     private final HashMap<UUID, Double> _attackedBy = new HashMap<>();
 
+    /**
+     * The names of the players in _attackedBy, captured when they join the
+     * fight so that nothing has to look up a profile when the fight ends.
+     */
+    private final HashMap<UUID, String> _participantNames = new HashMap<>();
+
+    /**
+     * Changes posted by tasks (possibly from other threads), applied on the
+     * main thread at the start of the next tick.
+     */
+    private final ConcurrentLinkedQueue<FightIntent> _intents = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The most recent snapshot of this fight, for async tasks. Null until the
+     * first tick.
+     */
+    private volatile FightSnapshot _snapshot;
+
+    /**
+     * The number of ticks this fight's tick task has run.
+     */
+    private long _tick;
+
+    /**
+     * Picks the players the dragon attacks; refreshed every tick.
+     */
+    private final DragonTargeting _targeting = new DragonTargeting();
+
+    /**
+     * Counts the fireballs, clouds and endermites this fight has alive.
+     */
+    private final ProjectileBudget _budget = new ProjectileBudget();
+
+    /**
+     * Holds the extra fireballs still to be fired; emptied every tick.
+     */
+    private final VolleyPlanner _volleys = new VolleyPlanner();
+
+    /**
+     * Rains fireballs on the arena in the final stage.
+     */
+    private final RainFireEngine _rainFire = new RainFireEngine();
+
+    /**
+     * Spawns the endermites the dragon summons.
+     */
+    private final EndermiteSwarm _endermites = new EndermiteSwarm();
+
+    /**
+     * Collects this fight's sounds, titles and action bars; flushed every tick.
+     */
+    private final FightBroadcast _broadcast = new FightBroadcast();
+
+    /**
+     * Records this fight's timeline to a file.
+     */
+    private final FightRecorder _recorder;
+
+    /**
+     * The task running {@link #tick()}.
+     */
+    private BukkitTask _tickTask;
+
+    /**
+     * The most intents applied in a single tick, so an intent which posts
+     * another can't stall the server.
+     */
+    private static final int MAX_INTENTS_PER_TICK = 256;
+
+    /**
+     * The directory in the plugin's data folder holding fight recordings.
+     */
+    private static final String RECORDINGS_DIRECTORY = "recordings";
+
     // ------------------------------------------------------------------------
     /**
      * Constructs a new Ender Dragon fight object/instance.
@@ -130,6 +213,8 @@ public class EnderDragonFight implements Listener {
     EnderDragonFight(EnderDragon dragon) {
         _id = UUID.randomUUID();
         NerdyDragon.log("Instantiating new fight with UUID " + _id.toString());
+        _timeStarted = System.currentTimeMillis();
+        _recorder = new FightRecorder(new File(NerdyDragon.PLUGIN.getDataFolder(), RECORDINGS_DIRECTORY), _id, _timeStarted);
         _dragon = dragon;
         NerdyDragon.log("The dragon has UUID " + dragon.getUniqueId().toString());
         _world = dragon.getWorld();
@@ -140,7 +225,6 @@ public class EnderDragonFight implements Listener {
         Util.tagEntityWithMetadata(_dragon);
         DragonHelper.modifyAttribute(_dragon, Attribute.GENERIC_MAX_HEALTH, 0.75);
         announceStage(FightStage.FIRST);
-        _timeStarted = System.currentTimeMillis();
     }
 
     // ------------------------------------------------------------------------
@@ -149,7 +233,26 @@ public class EnderDragonFight implements Listener {
      * one being deserialized.
      */
     private void commonInit() {
-        // find portal center
+        ArenaGeometry arena = NerdyDragon.STATE.getArenaGeometry(_world);
+        if (arena != null) {
+            _center = arena.getCenter(_world);
+        } else {
+            findCenter();
+        }
+        NerdyDragon.ARENAS.ensure(_world);
+        NerdyDragon.log("center = " + _center);
+        _tickTask = Bukkit.getScheduler().runTaskTimer(NerdyDragon.PLUGIN, this::tick, 1, 1);
+        _bossBar.setColor(_stage.BOSS_BAR_COLOR);
+        _bossBar.setStyle(BarStyle.SEGMENTED_20);
+        setChunkStates(true);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Finds the portal center block by block, for when the arena hasn't been
+     * scanned yet.
+     */
+    private void findCenter() {
         int y = _world.getHighestBlockYAt(0, 0);
         if (_world.getBlockAt(0, y, 0).getType() == Material.BEDROCK) {
             // found it
@@ -163,11 +266,93 @@ public class EnderDragonFight implements Listener {
                 }
             }
         }
-        NerdyDragon.log("center = " + _center);
-        Bukkit.getPluginManager().registerEvents(this, NerdyDragon.PLUGIN);
-        _bossBar.setColor(_stage.BOSS_BAR_COLOR);
-        _bossBar.setStyle(BarStyle.SEGMENTED_20);
-        setChunkStates(true);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Runs once per tick on the main thread: applies the intents posted since
+     * the last tick, refreshes the dragon's targets, fires any fireballs due
+     * from planned volleys and rains, spawns due endermites, takes a fresh
+     * snapshot for async tasks and sends the tick's sounds and titles.
+     */
+    private void tick() {
+        long started = System.nanoTime();
+        _tick++;
+        _recorder.tick(_tick);
+        FightIntent intent;
+        for (int i = 0; i < MAX_INTENTS_PER_TICK && (intent = _intents.poll()) != null; i++) {
+            if (_stage == FightStage.FINISHED) {
+                _intents.clear();
+                break;
+            }
+            try {
+                intent.apply(this);
+            } catch (Exception e) {
+                NerdyDragon.log("A fight intent failed:");
+                e.printStackTrace();
+            }
+        }
+        Collection<Player> players = null;
+        if (_dragon != null && _stage != FightStage.FINISHED) {
+            players = _world.getNearbyPlayers(_center, 80);
+            _targeting.refresh(players, _attackedBy, NerdyDragon.CONFIG.isTargetingByDamage(_world));
+            _volleys.emit(_tick, this);
+            _rainFire.tick(_tick, this, players);
+            _endermites.tick(_tick, this);
+            _snapshot = takeSnapshot(players);
+        }
+        if (_broadcast.hasPending()) {
+            _broadcast.flush(players != null ? players : _world.getNearbyPlayers(_center, 80));
+        }
+        _recorder.recordIfOverrun("tick", started);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Copies the state async tasks are allowed to see.
+     *
+     * @param players the players near the portal.
+     * @return the snapshot.
+     */
+    private FightSnapshot takeSnapshot(Collection<Player> players) {
+        Location dragonLocation = _dragon.getLocation();
+        UUID[] uuids = new UUID[players.size()];
+        double[] positions = new double[3 * uuids.length];
+        int i = 0;
+        for (Player player : players) {
+            Location location = player.getLocation();
+            uuids[i] = player.getUniqueId();
+            positions[3 * i] = location.getX();
+            positions[3 * i + 1] = location.getY();
+            positions[3 * i + 2] = location.getZ();
+            i++;
+        }
+        return new FightSnapshot(_tick, _stage, _dragon.getPhase(),
+                                 dragonLocation.getX(), dragonLocation.getY(), dragonLocation.getZ(),
+                                 _dragon.getHealth(), DragonHelper.getMaxHealth(_dragon),
+                                 uuids, positions);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Queues a change to be applied on the main thread at the start of the
+     * next tick. Safe to call from any thread.
+     *
+     * @param intent the intent.
+     */
+    public void post(FightIntent intent) {
+        _intents.add(intent);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the most recent snapshot of this fight. Safe to call from any
+     * thread.
+     *
+     * @return the snapshot, or null if the fight hasn't ticked yet.
+     */
+    public FightSnapshot getSnapshot() {
+        return _snapshot;
     }
 
     // ------------------------------------------------------------------------
@@ -203,11 +388,11 @@ public class EnderDragonFight implements Listener {
         for (UUID uuid : _attackedBy.keySet()) {
             String uuidString = uuid.toString();
             config.set("attacked-by." + uuidString, _attackedBy.get(uuid));
+            config.set("participant-names." + uuidString, _participantNames.get(uuid));
         }
         if (_stage == FightStage.FIRST) {
             _crystalRunnable.save(config);
         }
-        NerdyDragon.PLUGIN.saveConfig();
         NerdyDragon.log("... done!");
     }
 
@@ -247,6 +432,7 @@ public class EnderDragonFight implements Listener {
         NerdyDragon.log("Old UUID: " + _dragon.getUniqueId());
         NerdyDragon.log("New UUID: " + newDragon.getUniqueId());
         DragonHelper.mergeDragons(newDragon, _dragon);
+        _recorder.record(FightEvent.DRAGON_SWITCH, 0, 0, newDragon.getUniqueId());
         _dragon = newDragon;
         Util.tagEntityWithMetadata(newDragon);
         _bossBar = newDragon.getBossBar();
@@ -254,6 +440,27 @@ public class EnderDragonFight implements Listener {
         _bossBar.setStyle(BarStyle.SEGMENTED_20);
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the service which picks the players the dragon attacks.
+     *
+     * @return the targeting service.
+     */
+    DragonTargeting getTargeting() {
+        return _targeting;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the budget limiting how many fireballs, clouds and endermites
+     * this fight has alive at once.
+     *
+     * @return the projectile budget.
+     */
+    public ProjectileBudget getProjectileBudget() {
+        return _budget;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Returns the world in which this fight is taking place.
@@ -275,6 +482,22 @@ public class EnderDragonFight implements Listener {
         return _center;
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Returns a location the given height above a random spawnable surface
+     * block within the given square radius of the portal, from the arena's
+     * heightmap.
+     *
+     * @param radius the radius.
+     * @param height the height above the surface block.
+     * @return the location, or null if the heightmap hasn't been built yet or
+     *         no spawnable block was found.
+     */
+    public Location findSpawnLocation(int radius, double height) {
+        ArenaHeightmap heightmap = NerdyDragon.ARENAS.getHeightmap(_world);
+        return heightmap != null ? heightmap.findSpawnLocation(_world, radius, height) : null;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Returns a reference to the crystal runnable, or null if it doesn't exist.
@@ -292,16 +515,25 @@ public class EnderDragonFight implements Listener {
      * @param forced if the fight's end is forced (e.g. by command).
      */
     public void endFight(boolean forced) {
+        _forcedEnd = forced;
         if (_crystalRunnable != null) {
             _crystalRunnable.stop();
         }
         removeReinforcements(forced);
         _stage = FightStage.FINISHED;
+        _recorder.record(FightEvent.FIGHT_END, forced ? 1 : 0, 0, "");
+        _intents.clear();
+        _volleys.clear();
+        _rainFire.clear();
+        _endermites.clear();
+        _budget.clear();
         Thread.newThread(5, () -> {
+            if (_tickTask != null) {
+                _tickTask.cancel();
+            }
             setChunkStates(false);
-            HandlerList.unregisterAll(this);
-            Bukkit.getScheduler().cancelTasks(NerdyDragon.PLUGIN);
-            NerdyDragon.FIGHT = null;
+            _recorder.flush();
+            NerdyDragon.FIGHTS.unregister(this);
         });
     }
 
@@ -316,6 +548,26 @@ public class EnderDragonFight implements Listener {
     public Entity spawnReinforcement(Location location, EntityType type) {
         Entity entity = _world.spawnEntity(location, type);
         Util.tagEntityWithMetadata(entity);
+        _recorder.record(FightEvent.SPAWN, 0, 0, type.name());
+        return entity;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Spawns a reinforcement counted against the projectile budget, if the
+     * budget has room.
+     *
+     * @param location the location.
+     * @param type the entity type.
+     * @param kind the kind the entity is counted as.
+     * @return the entity, or null if the budget is exhausted.
+     */
+    private Entity spawnBudgeted(Location location, EntityType type, ProjectileBudget.Kind kind) {
+        if (!_budget.hasRoom(_stage)) {
+            return null;
+        }
+        Entity entity = spawnReinforcement(location, type);
+        _budget.track(entity, kind);
         return entity;
     }
 
@@ -336,8 +588,9 @@ public class EnderDragonFight implements Listener {
                 }
                 entity.remove();
             } else if (entity instanceof EnderDragon) {
+                // kill rather than remove, so vanilla still opens the exit portal
                 if (forced) {
-                    Bukkit.getServer().dispatchCommand(Bukkit.getConsoleSender(), "execute in minecraft:the_end run kill @e[type=minecraft:ender_dragon]");
+                    ((EnderDragon) entity).setHealth(0);
                 }
             } else {
                 entity.remove();
@@ -371,15 +624,44 @@ public class EnderDragonFight implements Listener {
 
     // ------------------------------------------------------------------------
     /**
-     * Plays a sound at each player's location.
+     * Plays a sound at each nearby player's location, at the end of the tick.
      *
      * @param sound the sound.
      * @param pitch the pitch.
      */
     public void playSound(Sound sound, float pitch) {
-        for (Player player : getNearbyPlayers()) {
-            player.playSound(player.getLocation(), sound, 3, pitch);
-        }
+        _broadcast.playSound(sound, pitch);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the channel this fight's sounds, titles and action bars are
+     * sent through.
+     *
+     * @return the broadcast channel.
+     */
+    public FightBroadcast getBroadcast() {
+        return _broadcast;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the recorder of this fight's timeline. Main thread only.
+     *
+     * @return the recorder.
+     */
+    public FightRecorder getRecorder() {
+        return _recorder;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if this fight hasn't finished. Safe from any thread.
+     *
+     * @return true if this fight hasn't finished.
+     */
+    public boolean isActive() {
+        return _stage != FightStage.FINISHED;
     }
 
     // ------------------------------------------------------------------------
@@ -399,7 +681,9 @@ public class EnderDragonFight implements Listener {
     void setStage(FightStage stage) {
         if (_stage != stage) {
             _stage = stage;
+            _recorder.record(FightEvent.STAGE, stage.ordinal(), 0, stage.name());
             if (stage != FightStage.FINISHED) {
+                EffectPool.forStage(stage);
                 _bossBar.setColor(stage.BOSS_BAR_COLOR);
                 announceStage(stage);
             }
@@ -440,8 +724,8 @@ public class EnderDragonFight implements Listener {
      * @param stage the next stage.
      */
     private void announceStage(FightStage stage) {
-        playSound(Sound.ENTITY_ENDER_DRAGON_AMBIENT, 1);
-        getNearbyPlayers().forEach(player -> player.sendTitle(stage.DISPLAY_NAME, "", 15, 20 * 4, 25));
+        _broadcast.playSound(Sound.ENTITY_ENDER_DRAGON_AMBIENT, 1);
+        _broadcast.sendTitle(stage.DISPLAY_NAME, "", 15, 20 * 4, 25);
     }
 
     // ------------------------------------------------------------------------
@@ -451,9 +735,7 @@ public class EnderDragonFight implements Listener {
      * @param msg the message to send via the action bar.
      */
     private void alertPlayers(String msg) {
-        for (Player player : getNearbyPlayers()) {
-            player.sendActionBar(ChatColor.WHITE.toString() + msg);
-        }
+        _broadcast.sendActionBar(ChatColor.WHITE.toString() + msg);
     }
 
     // ------------------------------------------------------------------------
@@ -469,16 +751,29 @@ public class EnderDragonFight implements Listener {
             _attackedBy.put(uuid, damage + _attackedBy.get(uuid));
         } else {
             _attackedBy.put(uuid, damage);
+            _participantNames.put(uuid, player.getName());
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the cached name of a player who has damaged the dragon. Never
+     * looks up a profile; if the name is not yet known, the UUID is returned.
+     *
+     * @param uuid the player's UUID.
+     * @return the player's name, or their UUID as a string if unknown.
+     */
+    public String getParticipantName(UUID uuid) {
+        String name = _participantNames.get(uuid);
+        return (name != null) ? name : uuid.toString();
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Prevent reinforcements from picking up items. This will prevent
      * headaches re: picking up player-dropped loot.
      */
-    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
-    public void onEntityPickupItem(EntityPickupItemEvent e) {
+    void onEntityPickupItem(EntityPickupItemEvent e) {
         if (Util.isReinforcement(e.getEntity())) {
             e.setCancelled(true);
         }
@@ -490,12 +785,14 @@ public class EnderDragonFight implements Listener {
      * attack damage nerf, and will be removed automatically after 20-30 seconds
      * to prevent a build up.
      */
-    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
-    public void onCreatureSpawn(CreatureSpawnEvent e) {
+    void onCreatureSpawn(CreatureSpawnEvent e) {
         if (e.getEntityType() == EntityType.VEX) {
             Vex vex = (Vex) e.getEntity();
             if (Util.isReinforcement(vex.getSummoner())) {
-                vex.getEquipment().setHelmet(Util.getRandomAdminHead());
+                ItemStack head = Util.getRandomAdminHead();
+                if (head != null) {
+                    vex.getEquipment().setHelmet(head);
+                }
                 vex.setHealth(5.0);
                 vex.getAttribute(Attribute.GENERIC_ATTACK_DAMAGE).addModifier(new AttributeModifier("weak", -0.5, AttributeModifier.Operation.MULTIPLY_SCALAR_1));
                 Thread.newThread(20, 30, vex::remove);
@@ -508,8 +805,7 @@ public class EnderDragonFight implements Listener {
      * When the dragon dies: reward loot, play sound in mirror worlds, and clean
      * up the fight.
      */
-    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
-    public void onEntityDeath(EntityDeathEvent e) {
+    void onEntityDeath(EntityDeathEvent e) {
         // ignore non-reinforcements
         if (!Util.isReinforcement(e.getEntity())) {
             if (e.getEntityType() == EntityType.ENDER_DRAGON) {
@@ -526,6 +822,24 @@ public class EnderDragonFight implements Listener {
             return;
         }
 
+        // killed by a forced stop: no loot, no record
+        if (_forcedEnd) {
+            e.getDrops().clear();
+            return;
+        }
+
+        // compute and normalize damage ratios
+        final HashMap<UUID, Double> damagePercents = new HashMap<>();
+        double damageSum = _attackedBy.values()
+                                      .stream()
+                                      .reduce(Double::sum)
+                                      .orElse(DragonHelper.getMaxHealth(_dragon));
+        for (UUID uuid : _attackedBy.keySet()) {
+            double damage = _attackedBy.get(uuid);
+            double ratio = damage / damageSum; // normalize
+            damagePercents.put(uuid, ratio);
+        }
+
         // dragon dead, award loot
         e.getDrops().clear();
         Player killer = e.getEntity().getKiller();
@@ -543,61 +857,49 @@ public class EnderDragonFight implements Listener {
                 NerdyDragon.log("getsLoot = null, no last damager " + lastDamager);
             }
         }
+        UUID lootRecipient = (getsLoot != null) ? getsLoot.getUniqueId() : _lastDamagedBy;
+        double recipientShare = (lootRecipient != null) ? damagePercents.getOrDefault(lootRecipient, 0.0) : 0.0;
+        List<ItemStack> loot = NerdyDragon.CONFIG.getLootTable(_attackedBy.size() <= 1).roll(recipientShare);
+        _recorder.record(FightEvent.LOOT, loot.size(), (float) recipientShare, (getsLoot != null) ? lootRecipient : null);
         if (getsLoot != null) {
-            for (ItemStack loot : NerdyDragon.CONFIG.getLoot()) {
-                if (getsLoot.getInventory().addItem(loot).size() == 0) {
-                    NerdyDragon.message(getsLoot, "Check your inventory for your loot! (" + loot.getAmount() + "x " + loot.getType().toString() + ")");
+            for (ItemStack item : loot) {
+                if (getsLoot.getInventory().addItem(item).size() == 0) {
+                    NerdyDragon.message(getsLoot, "Check your inventory for your loot! (" + item.getAmount() + "x " + item.getType().toString() + ")");
                 } else {
                     String msg = String.format("There's no room in your inventory for your loot so it's been dropped at your feet. %s (%dx %s)",
                         Util.locationToOrderedTriple(getsLoot.getLocation()),
-                        loot.getAmount(),
-                        loot.getType().toString()
+                        item.getAmount(),
+                        item.getType().toString()
                     );
                     NerdyDragon.message(getsLoot, msg);
-                    _world.dropItemNaturally(getsLoot.getLocation(), loot);
+                    _world.dropItemNaturally(getsLoot.getLocation(), item);
                 }
             }
         } else {
             NerdyDragon.log("Dragon death: no specific killer found or they're offline or dead. Dropping loot naturally.");
-            e.getDrops().clear();
-            e.getDrops().addAll(NerdyDragon.CONFIG.getLoot());
+            e.getDrops().addAll(loot);
         }
 
         // play death sound in mirrored worlds
-        for (World world : NerdyDragon.CONFIG.getMirrorWorlds()) {
+        for (World world : NerdyDragon.MIRROR_WORLDS.getWorlds()) {
             world.playSound(new Location(world, 0, 65, 0), Sound.ENTITY_ENDER_DRAGON_DEATH, 2500, 0.9f);
         }
 
-        // compute and normalize damage ratios
-        final HashMap<UUID, Double> damagePercents = new HashMap<>();
-        double damageSum = _attackedBy.values()
-                                      .stream()
-                                      .reduce(Double::sum)
-                                      .orElse(DragonHelper.getMaxHealth(_dragon));
-        for (UUID uuid : _attackedBy.keySet()) {
-            double damage = _attackedBy.get(uuid);
-            double ratio = damage / damageSum; // normalize
-            damagePercents.put(uuid, ratio);
-        }
-
         // calculate duration and build victory message
         long absoluteDuration = System.currentTimeMillis() - _timeStarted;
         String fightDuration = DurationFormatUtils.formatDuration(absoluteDuration, Util.getHMSFormat(absoluteDuration));
         String adjective = (_attackedBy.size() == 1) ? "warrior" : "warriors";
-        String attackers = _attackedBy.keySet().stream()
-            .map(Bukkit::getOfflinePlayer)
-            .map(p -> String.format("%s%s%s (%.2f%%)", ChatColor.DARK_PURPLE, p.getName(), ChatColor.GRAY, damagePercents.get(p.getUniqueId())))
+        String attackers = damagePercents.entrySet().stream()
+            .map(entry -> String.format("%s%s%s (%.2f%%)", ChatColor.DARK_PURPLE, getParticipantName(entry.getKey()), ChatColor.GRAY, 100 * entry.getValue()))
             .collect(Collectors.joining(", "));
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            NerdyDragon.message(player, "The dragon has been slain! The valiant " + adjective + " " + attackers + ChatColor.GRAY + " prevailed in " + ChatColor.DARK_PURPLE + fightDuration);
-        }
+        NerdyDragon.broadcast("The dragon has been slain! The valiant " + adjective + " " + attackers + ChatColor.GRAY + " prevailed in " + ChatColor.DARK_PURPLE + fightDuration);
 
         // record this fight into history
-        NerdyDragon.LEADERBOARD.add(this, absoluteDuration, damagePercents);
+        NerdyDragon.LEADERBOARD.add(this, absoluteDuration, damagePercents, (killer != null) ? killer.getUniqueId() : _lastDamagedBy);
 
         // debug
         _attackedBy.forEach((uuid, dmg) -> {
-            NerdyDragon.log("[DAMAGE] " + Bukkit.getOfflinePlayer(uuid).getName() + " --> " + dmg);
+            NerdyDragon.log("[DAMAGE] " + getParticipantName(uuid) + " --> " + dmg);
         });
 
         // clean up
@@ -608,8 +910,7 @@ public class EnderDragonFight implements Listener {
     /**
      * Don't rain leads because of reinforcement phantoms.
      */
-    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
-    protected void onEntityUnleash(EntityUnleashEvent e) {
+    void onEntityUnleash(EntityUnleashEvent e) {
         if (!Util.isReinforcement(e.getEntity()) || e.getReason() != EntityUnleashEvent.UnleashReason.HOLDER_GONE) {
             return;
         }
@@ -630,8 +931,7 @@ public class EnderDragonFight implements Listener {
     /**
      * Shulkers fire extra bullets.
      */
-    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
-    public void onShulkerShoot(ProjectileLaunchEvent e) {
+    void onShulkerShoot(ProjectileLaunchEvent e) {
         if (_stage != FightStage.THIRD && _stage != FightStage.FOURTH) {
             return;
         }
@@ -644,6 +944,9 @@ public class EnderDragonFight implements Listener {
             if (shulker.getTarget() instanceof Player && inRange((Player) shulker.getTarget())) {
                 final Location loc = e.getEntity().getLocation().clone();
                 Thread.newRepeatedThread(1, 3, 10, () -> {
+                    if (!isActive()) {
+                        return;
+                    }
                     ShulkerBullet bullet = (ShulkerBullet) _world.spawnEntity(loc.add(0, 1, 0), EntityType.SHULKER_BULLET);
                     Util.tagEntityWithMetadata(bullet);
                     bullet.setTarget(shulker.getTarget());
@@ -660,12 +963,9 @@ public class EnderDragonFight implements Listener {
      *
      * @apiNote Requires Paper.
      */
-    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
-    public void onDragonFlame(EnderDragonFlameEvent e) {
+    void onDragonFlame(EnderDragonFlameEvent e) {
         PotionEffectHelper.modifyDragonBreath(e.getAreaEffectCloud(), _stage);
-        Thread.newRepeatedThread(12, 18, 3, () -> {
-            spawnReinforcement(e.getEntity().getEyeLocation(), EntityType.ENDERMITE);
-        });
+        _endermites.request(_tick, e.getEntity().getEyeLocation(), MathUtil.random(12, 18), 3);
     }
 
     // ------------------------------------------------------------------------
@@ -675,31 +975,32 @@ public class EnderDragonFight implements Listener {
      *
      * @apiNote Requires Paper.
      */
-    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
-    public void onDragonFireballImpact(EnderDragonFireballHitEvent e) {
+    void onDragonFireballImpact(EnderDragonFireballHitEvent e) {
         AreaEffectCloud dragonBreath = e.getAreaEffectCloud();
         Util.tagEntityWithMetadata(dragonBreath);
+        _budget.track(dragonBreath, ProjectileBudget.Kind.CLOUD);
 
-        AreaEffectCloud effectCloud = (AreaEffectCloud) spawnReinforcement(dragonBreath.getLocation(), EntityType.AREA_EFFECT_CLOUD);
-        PotionEffectHelper.modifyDragonBreath(effectCloud, _stage);
-        dragonBreath.setDuration(effectCloud.getDuration());
+        AreaEffectCloud effectCloud = (AreaEffectCloud) spawnBudgeted(dragonBreath.getLocation(), EntityType.AREA_EFFECT_CLOUD, ProjectileBudget.Kind.CLOUD);
+        if (effectCloud != null) {
+            PotionEffectHelper.modifyDragonBreath(effectCloud, _stage);
+            dragonBreath.setDuration(effectCloud.getDuration());
+        }
 
-        if (MathUtil.cdf(0.30)) {
-            Thread.newRepeatedThread(1, _stage.MAX_ENDERMITES, 1, () -> {
-                this.spawnReinforcement(dragonBreath.getLocation(), EntityType.ENDERMITE);
-            });
+        if (_stage.MAX_ENDERMITES > 0 && MathUtil.cdf(0.30)) {
+            _endermites.request(_tick, dragonBreath.getLocation(), MathUtil.random(1, _stage.MAX_ENDERMITES), 1);
         }
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Prevent area effect clouds from affecting reinforcements.
+     * Prevent this fight's clouds from affecting reinforcements, by removing
+     * them from the cloud's targets before the effects are applied.
      */
-    @EventHandler
-    public void onAreaEffectCloudApplyEvent(AreaEffectCloudApplyEvent event) {
-        event.getAffectedEntities().stream()
-            .filter(Util::isReinforcement)
-            .forEach(PotionEffectHelper::removePotionEffects);
+    void onAreaEffectCloudApplyEvent(AreaEffectCloudApplyEvent event) {
+        if (!Util.isReinforcement(event.getEntity())) {
+            return;
+        }
+        event.getAffectedEntities().removeIf(Util::isReinforcement);
     }
 
     // ------------------------------------------------------------------------
@@ -707,37 +1008,39 @@ public class EnderDragonFight implements Listener {
      * @see EnderDragonShootFireballEvent
      * @apiNote Requires Paper.
      */
-    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
-    public void onDragonFireball(EnderDragonShootFireballEvent e) {
+    void onDragonFireball(EnderDragonShootFireballEvent e) {
         if (_stage == FightStage.FIRST) {
             e.setCancelled(true);
             return;
         }
-        Player target = DragonHelper.findRandomTarget(this);
+        if (!_budget.hasRoom(_stage)) {
+            e.setCancelled(true);
+            return;
+        }
+        _budget.track(e.getFireball(), ProjectileBudget.Kind.FIREBALL);
+        Player target = _targeting.next();
         if (target == null) {
             return;
         }
-        Thread.newRepeatedThread(1, _stage.MAX_EXTRA_FIREBALLS, _stage.FIREBALL_TICK_INCREMENT, () -> {
-            Location targetLoc = target.getLocation();
-            Location dragonLoc = _dragon.getEyeLocation();
-            Vector farEnoughAhead = dragonLoc.toVector().clone()
-                .add(dragonLoc.getDirection()
-                .multiply(4));
-            Vector dP = targetLoc.toVector().clone()
-                .subtract(farEnoughAhead)
-                .normalize()
-                .multiply(0.75);
-            DragonFireball fireball = _dragon.launchProjectile(DragonFireball.class, dP);
-            fireball.setDirection(dP);
-        });
+        _volleys.plan(_tick, _dragon, target, _stage);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Stops counting entities against the projectile budget once they leave
+     * the world.
+     *
+     * @apiNote Requires Paper.
+     */
+    void onEntityRemoveFromWorld(EntityRemoveFromWorldEvent e) {
+        _budget.untrack(e.getEntity().getUniqueId());
     }
 
     // ------------------------------------------------------------------------
     /**
      * @see EnderDragonChangePhaseEvent
      */
-    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
-    public void onDragonPhaseChange(EnderDragonChangePhaseEvent e) {
+    void onDragonPhaseChange(EnderDragonChangePhaseEvent e) {
         EnderDragon.Phase phase = e.getNewPhase();
         double rand = MathUtil.nextDouble();
         switch (_stage) {
@@ -779,7 +1082,7 @@ public class EnderDragonFight implements Listener {
                 if (phase == EnderDragon.Phase.FLY_TO_PORTAL) {
                     e.setCancelled(true);
                     if (rand <= 0.20) {
-                        new RainFireTask(this);
+                        _rainFire.trigger(_tick, this);
                     } else if (rand <= 0.40) {
                         DragonHelper.chargeRandomPlayer(this);
                     } else if (rand <= 0.90) {
@@ -790,10 +1093,10 @@ public class EnderDragonFight implements Listener {
 
             default: break;
         }
+        _recorder.record(FightEvent.PHASE, e.isCancelled() ? 1 : 0, 0, phase.name());
     }
 
-    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
-    public void onEntityDamage(EntityDamageEvent e) {
+    void onEntityDamage(EntityDamageEvent e) {
         if (e.getEntityType() == EntityType.ENDER_DRAGON) {
             EnderDragon dragon = (EnderDragon) e.getEntity();
             double health = dragon.getHealth() - e.getFinalDamage();
@@ -820,8 +1123,7 @@ public class EnderDragonFight implements Listener {
      * Handles reactions and side-effects from damaging the dragon or a crystal.
      * Blocks damage dealt by players not involved in this fight.
      */
-    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
-    public void onEntityDamageByEntity(EntityDamageByEntityEvent e) {
+    void onEntityDamageByEntity(EntityDamageByEntityEvent e) {
         // don't let the dragon hurt reinforcements
         switch (e.getDamager().getType()) {
             case ENDER_DRAGON:
@@ -860,7 +1162,7 @@ public class EnderDragonFight implements Listener {
             // otherwise go for it
             } else {
                 if (Util.isFlying(player)) {
-                    player.sendActionBar(ChatColor.RED.toString() + "The crystal absorbed the impact!");
+                    _broadcast.sendActionBar(player, ChatColor.RED.toString() + "The crystal absorbed the impact!");
                     e.setCancelled(true);
                     return;
                 }
@@ -883,7 +1185,7 @@ public class EnderDragonFight implements Listener {
             if (_stage == FightStage.FOURTH) {
                 if (_dragon.getHealth() >= 10) {
                     if (MathUtil.cdf(0.10)) {
-                        new RainFireTask(this);
+                        _rainFire.trigger(_tick, this);
                     }
                     if (damager instanceof Projectile && MathUtil.cdf(0.33)) {
                         if (new AbsorbProjectileTask(this, e).isAbsorbed()) {
@@ -901,6 +1203,7 @@ public class EnderDragonFight implements Listener {
             if (damager instanceof Player) {
                 _lastDamagedBy = damager.getUniqueId();
                 recordDamage((Player) damager, finalDamage);
+                _recorder.record(FightEvent.DAMAGE, FightEvent.DAMAGE_MELEE, (float) finalDamage, _lastDamagedBy);
                 alertPlayers(damager.getName() + " inflicted " + displayFinalDamage + " damage");
             } else if (damager instanceof Projectile) {
                 ProjectileSource shooter = ((Projectile) damager).getShooter();
@@ -908,9 +1211,11 @@ public class EnderDragonFight implements Listener {
                     Player playerShooter = (Player) shooter;
                     recordDamage(playerShooter, finalDamage);
                     _lastDamagedBy = playerShooter.getUniqueId();
+                    _recorder.record(FightEvent.DAMAGE, FightEvent.DAMAGE_PROJECTILE, (float) finalDamage, _lastDamagedBy);
                     alertPlayers(playerShooter.getName() + "'s " + damager.getType().toString() + " inflicted " + displayFinalDamage + " damage");
                 }
             } else {
+                _recorder.record(FightEvent.DAMAGE, FightEvent.DAMAGE_OTHER, (float) finalDamage, (UUID) null);
                 alertPlayers(damager.getType().toString() + " inflicted " + displayFinalDamage + " damage");
             }
 
@@ -934,21 +1239,55 @@ public class EnderDragonFight implements Listener {
         }
     } // onEntityDamageByEntity
 
+    // ------------------------------------------------------------------------
+    /**
+     * Restores the names of the participants of a deserialized fight. Names
+     * missing from the saved fight (e.g. one saved by an older version) are
+     * resolved off the main thread and filled in when ready.
+     *
+     * @param namesSection the saved names; may be null.
+     */
+    private void resolveParticipantNames(ConfigurationSection namesSection) {
+        HashSet<UUID> unresolved = new HashSet<>();
+        for (UUID uuid : _attackedBy.keySet()) {
+            String name = (namesSection != null) ? namesSection.getString(uuid.toString()) : null;
+            if (name != null) {
+                _participantNames.put(uuid, name);
+            } else {
+                unresolved.add(uuid);
+            }
+        }
+        if (unresolved.isEmpty()) {
+            return;
+        }
+        Thread.newAsyncThread(() -> {
+            HashMap<UUID, String> resolved = new HashMap<>();
+            for (UUID uuid : unresolved) {
+                String name = Bukkit.getOfflinePlayer(uuid).getName();
+                if (name != null) {
+                    resolved.put(uuid, name);
+                }
+            }
+            Thread.newThread(() -> resolved.forEach(_participantNames::putIfAbsent));
+        });
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Deserializing constructor.
+     *
+     * @param world the world the fight was saved in.
+     * @param config the saved fight.
      */
-    EnderDragonFight(ConfigurationSection config) {
+    EnderDragonFight(World world, ConfigurationSection config) {
         _timeStarted = config.getLong("started-at", 0) + (System.currentTimeMillis() - config.getLong("restart-at", 0));
 
         String uuidAsString = config.getString("id");
         _id = UUID.fromString(uuidAsString);
         NerdyDragon.log("Instantiating serialized fight with UUID " + _id.toString());
+        _recorder = new FightRecorder(new File(NerdyDragon.PLUGIN.getDataFolder(), RECORDINGS_DIRECTORY), _id, _timeStarted);
 
-        // find world
-        String worldName = config.getString("world-name", "world_the_end");
-        World world = Bukkit.getWorld(worldName);
-        _world = (world != null) ? world : Util.WORLD_THE_END;
+        _world = world;
         NerdyDragon.log("--> world = " + _world);
 
         try {
@@ -1012,6 +1351,7 @@ public class EnderDragonFight implements Listener {
                 _attackedBy.put(uuid, damage);
             }
         }
+        resolveParticipantNames(config.getConfigurationSection("participant-names"));
 
         _bossBar = _dragon.getBossBar();
 
@@ -1021,9 +1361,6 @@ public class EnderDragonFight implements Listener {
             NerdyDragon.log("Starting crystal runnable...");
             _crystalRunnable = new CrystalRunnable(this, config.getConfigurationSection("crystal-runnable"));
         }
-
-        NerdyDragon.PLUGIN.getConfig().set("saved-fight", null);
-        NerdyDragon.PLUGIN.saveConfig();
     }
 
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+
+// ------------------------------------------------------------------------
+/**
+ * Spawns the endermites the dragon summons. Callers request a number of
+ * endermites at a location, spaced some ticks apart; the fight's tick spawns
+ * them, no more than {@link #SPAWNS_PER_TICK} per tick, for as long as the
+ * fight has fewer than {@link FightStage#MAX_LIVE_ENDERMITES} alive and the
+ * projectile budget has room. Requests which can't be met are dropped, not
+ * queued, so a swarm never builds up behind the cap.
+ *
+ * The live count is the projectile budget's, which already follows every
+ * endermite from spawn to removal. Main thread only.
+ */
+class EndermiteSwarm {
+
+    /**
+     * The most requests which can be pending at once. Further requests are
+     * dropped.
+     */
+    private static final int CAPACITY = 16;
+
+    /**
+     * The most endermites spawned in one tick.
+     */
+    private static final int SPAWNS_PER_TICK = 2;
+
+    /**
+     * Where each pending request spawns its endermites.
+     */
+    private final double[] _x = new double[CAPACITY];
+
+    private final double[] _y = new double[CAPACITY];
+
+    private final double[] _z = new double[CAPACITY];
+
+    /**
+     * The number of endermites each pending request has left to spawn.
+     */
+    private final int[] _remaining = new int[CAPACITY];
+
+    /**
+     * The tick each pending request next spawns on, and the ticks between
+     * its spawns.
+     */
+    private final long[] _nextAt = new long[CAPACITY];
+
+    private final int[] _interval = new int[CAPACITY];
+
+    /**
+     * The number of pending requests.
+     */
+    private int _count;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Requests endermites at the given location.
+     *
+     * @param now the fight's current tick.
+     * @param location where to spawn them.
+     * @param count how many to spawn.
+     * @param interval the ticks between spawns; at least 1.
+     */
+    void request(long now, Location location, int count, int interval) {
+        if (count <= 0 || _count == CAPACITY) {
+            return;
+        }
+        _x[_count] = location.getX();
+        _y[_count] = location.getY();
+        _z[_count] = location.getZ();
+        _remaining[_count] = count;
+        _interval[_count] = Math.max(1, interval);
+        _nextAt[_count] = now + _interval[_count];
+        _count++;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Spawns the endermites which are due. Called every tick by the fight.
+     *
+     * @param now the fight's current tick.
+     * @param fight the fight.
+     */
+    void tick(long now, EnderDragonFight fight) {
+        if (_count == 0) {
+            return;
+        }
+        FightStage stage = fight.getStage();
+        ProjectileBudget budget = fight.getProjectileBudget();
+        World world = fight.getWorld();
+        int spawned = 0;
+        for (int i = 0; i < _count; i++) {
+            while (_remaining[i] > 0 && _nextAt[i] <= now && spawned < SPAWNS_PER_TICK) {
+                if (budget.getInFlight(ProjectileBudget.Kind.ENDERMITE) >= stage.MAX_LIVE_ENDERMITES
+                    || !budget.hasRoom(stage)) {
+                    _remaining[i] = 0;
+                    break;
+                }
+                Location location = new Location(world, _x[i], _y[i], _z[i]);
+                budget.track(fight.spawnReinforcement(location, EntityType.ENDERMITE), ProjectileBudget.Kind.ENDERMITE);
+                _remaining[i]--;
+                _nextAt[i] += _interval[i];
+                spawned++;
+            }
+        }
+        int kept = 0;
+        for (int i = 0; i < _count; i++) {
+            if (_remaining[i] > 0) {
+                _x[kept] = _x[i];
+                _y[kept] = _y[i];
+                _z[kept] = _z[i];
+                _remaining[kept] = _remaining[i];
+                _nextAt[kept] = _nextAt[i];
+                _interval[kept] = _interval[i];
+                kept++;
+            }
+        }
+        _count = kept;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Drops every pending request.
+     */
+    void clear() {
+        _count = 0;
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import nu.nerd.entitymeta.EntityMeta;
+import org.bukkit.entity.Entity;
+
+// ------------------------------------------------------------------------
+/**
+ * Tags entities through the EntityMeta plugin. Only construct this if
+ * EntityMeta is installed.
+ */
+class EntityMetaTagStore implements EntityTagStore {
+
+    static final String NAME = "entitymeta";
+
+    /**
+     * This plugin's EntityMeta metadata key.
+     */
+    private static final String METADATA_KEY = "dragon-fight";
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EntityTagStore#getName().
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EntityTagStore#tag(Entity).
+     *
+     * The tag is stored as the string "true", as it always has been, so that
+     * entities tagged by earlier versions are still recognised.
+     */
+    @Override
+    public void tag(Entity entity) {
+        EntityMeta.api().set(entity, NerdyDragon.PLUGIN, METADATA_KEY, "true");
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EntityTagStore#isTagged(Entity).
+     */
+    @Override
+    public boolean isTagged(Entity entity) {
+        Object meta = EntityMeta.api().get(entity, NerdyDragon.PLUGIN, METADATA_KEY);
+        return meta != null && "true".equalsIgnoreCase(meta.toString());
+    }
+
+}
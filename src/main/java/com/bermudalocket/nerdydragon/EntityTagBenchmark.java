@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.Location;
+import org.bukkit.entity.ArmorStand;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ------------------------------------------------------------------------
+/**
+ * Times {@link EntityTagStore#isTagged(Entity)} for each available store, on
+ * one tagged and one untagged throwaway armor stand, so an admin can see
+ * which backend is cheaper on their server. Main thread only.
+ */
+public class EntityTagBenchmark {
+
+    /**
+     * The number of untimed lookups made before timing each store, to let
+     * the JIT settle.
+     */
+    private static final int WARMUP_LOOKUPS = 10000;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Runs the benchmark.
+     *
+     * @param where where to spawn the armor stands.
+     * @param lookups the number of timed lookups per store.
+     * @return one line of results per store.
+     */
+    public static List<String> run(Location where, int lookups) {
+        List<EntityTagStore> stores = new ArrayList<>();
+        stores.add(new PersistentDataTagStore());
+        if (NerdyDragon.isEntityMetaInstalled()) {
+            stores.add(new EntityMetaTagStore());
+        }
+
+        List<String> results = new ArrayList<>();
+        for (EntityTagStore store : stores) {
+            Entity tagged = spawnStand(where);
+            Entity untagged = spawnStand(where);
+            try {
+                store.tag(tagged);
+                int hits = 0;
+                for (int i = 0; i < WARMUP_LOOKUPS; i++) {
+                    hits += lookup(store, (i & 1) == 0 ? tagged : untagged);
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < lookups; i++) {
+                    hits += lookup(store, (i & 1) == 0 ? tagged : untagged);
+                }
+                long elapsed = System.nanoTime() - start;
+                int expected = (WARMUP_LOOKUPS + 1) / 2 + (lookups + 1) / 2;
+                results.add(String.format("%s: %.1f ns per lookup%s%s", store.getName(),
+                                          (double) elapsed / Math.max(1, lookups),
+                                          store.getName().equals(NerdyDragon.TAGS.getName()) ? " (in use)" : "",
+                                          hits == expected ? "" : " (WRONG RESULTS)"));
+            } finally {
+                tagged.remove();
+                untagged.remove();
+            }
+        }
+        return results;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Looks up an entity's tag.
+     *
+     * @param store the store.
+     * @param entity the entity.
+     * @return 1 if the entity is tagged, otherwise 0.
+     */
+    private static int lookup(EntityTagStore store, Entity entity) {
+        return store.isTagged(entity) ? 1 : 0;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Spawns an invisible marker armor stand which won't be saved.
+     *
+     * @param where the location.
+     * @return the armor stand.
+     */
+    private static Entity spawnStand(Location where) {
+        ArmorStand stand = (ArmorStand) where.getWorld().spawnEntity(where, EntityType.ARMOR_STAND);
+        stand.setVisible(false);
+        stand.setMarker(true);
+        stand.setGravity(false);
+        stand.setPersistent(false);
+        return stand;
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.entity.Entity;
+
+// ------------------------------------------------------------------------
+/**
+ * Marks the entities spawned by a fight so they can be recognised later,
+ * including after a restart. {@link #isTagged(Entity)} runs in most of the
+ * fight's event handlers, so implementations should make it cheap.
+ *
+ * Main thread only.
+ */
+public interface EntityTagStore {
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the name used to select this store in the configuration.
+     *
+     * @return the name.
+     */
+    String getName();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Tags the given entity.
+     *
+     * @param entity the entity.
+     */
+    void tag(Entity entity);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if the given entity has been tagged.
+     *
+     * @param entity the entity.
+     * @return true if the given entity has been tagged.
+     */
+    boolean isTagged(Entity entity);
+
+}
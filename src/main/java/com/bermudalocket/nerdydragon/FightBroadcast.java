@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Sound;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// ------------------------------------------------------------------------
+/**
+ * Collects the sounds, titles and action bars a fight sends during a tick and
+ * sends them once, when the fight's tick flushes the channel. Cues with the
+ * same key for the same player are merged; the last one queued wins. A sound
+ * is keyed by the sound, so one sound cued several times in a tick is played
+ * once; a player has one title and one action bar slot per tick, since each
+ * would replace the previous anyway.
+ *
+ * Main thread only.
+ */
+public class FightBroadcast {
+
+    /**
+     * The volume of sounds played to everyone near the portal.
+     */
+    private static final float VOLUME = 3;
+
+    private static final String TITLE_KEY = "title";
+
+    private static final String ACTION_BAR_KEY = "action-bar";
+
+    /**
+     * Cues for everyone near the portal at flush time, by key.
+     */
+    private final LinkedHashMap<String, Cue> _toAll = new LinkedHashMap<>();
+
+    /**
+     * Cues for individual players, by player and key.
+     */
+    private final HashMap<UUID, LinkedHashMap<String, Cue>> _toPlayer = new HashMap<>();
+
+    /**
+     * The number of packets sent, and the number not sent because they were
+     * merged with another cue.
+     */
+    private long _sent;
+
+    private long _saved;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Plays a sound to everyone near the portal, at their own location.
+     *
+     * @param sound the sound.
+     * @param pitch the pitch.
+     */
+    public void playSound(Sound sound, float pitch) {
+        queue(_toAll, soundKey(sound), player -> player.playSound(player.getLocation(), sound, VOLUME, pitch));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Plays a sound to one player, at their location.
+     *
+     * @param player the player.
+     * @param sound the sound.
+     * @param volume the volume.
+     * @param pitch the pitch.
+     */
+    public void playSound(Player player, Sound sound, float volume, float pitch) {
+        queue(forPlayer(player), soundKey(sound), p -> p.playSound(p.getLocation(), sound, volume, pitch));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Shows a title to everyone near the portal.
+     *
+     * @param title the title.
+     * @param subtitle the subtitle.
+     * @param fadeIn the fade-in time, in ticks.
+     * @param stay the display time, in ticks.
+     * @param fadeOut the fade-out time, in ticks.
+     */
+    public void sendTitle(String title, String subtitle, int fadeIn, int stay, int fadeOut) {
+        queue(_toAll, TITLE_KEY, player -> player.sendTitle(title, subtitle, fadeIn, stay, fadeOut));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Shows a title to one player.
+     *
+     * @param player the player.
+     * @param title the title.
+     * @param subtitle the subtitle.
+     * @param fadeIn the fade-in time, in ticks.
+     * @param stay the display time, in ticks.
+     * @param fadeOut the fade-out time, in ticks.
+     */
+    public void sendTitle(Player player, String title, String subtitle, int fadeIn, int stay, int fadeOut) {
+        queue(forPlayer(player), TITLE_KEY, p -> p.sendTitle(title, subtitle, fadeIn, stay, fadeOut));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Shows an action bar message to everyone near the portal.
+     *
+     * @param message the message.
+     */
+    public void sendActionBar(String message) {
+        queue(_toAll, ACTION_BAR_KEY, player -> player.sendActionBar(message));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Shows an action bar message to one player.
+     *
+     * @param player the player.
+     * @param message the message.
+     */
+    public void sendActionBar(Player player, String message) {
+        queue(forPlayer(player), ACTION_BAR_KEY, p -> p.sendActionBar(message));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if any cues are waiting to be sent.
+     *
+     * @return true if any cues are waiting to be sent.
+     */
+    public boolean hasPending() {
+        return !_toAll.isEmpty() || !_toPlayer.isEmpty();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Sends the queued cues. A player's own cue replaces a cue for everyone
+     * with the same key.
+     *
+     * @param audience the players near the portal.
+     */
+    void flush(Collection<Player> audience) {
+        if (!hasPending()) {
+            return;
+        }
+        LinkedHashMap<String, Cue> merged = new LinkedHashMap<>();
+        for (Player player : audience) {
+            LinkedHashMap<String, Cue> own = _toPlayer.remove(player.getUniqueId());
+            if (own == null) {
+                send(player, _toAll);
+                continue;
+            }
+            merged.putAll(_toAll);
+            for (Map.Entry<String, Cue> entry : own.entrySet()) {
+                Cue replaced = merged.put(entry.getKey(), entry.getValue());
+                if (replaced != null) {
+                    _saved += replaced._requests;
+                }
+            }
+            send(player, merged);
+            merged.clear();
+        }
+        // players who have left the arena since their cue was queued
+        for (Map.Entry<UUID, LinkedHashMap<String, Cue>> entry : _toPlayer.entrySet()) {
+            Player player = Bukkit.getPlayer(entry.getKey());
+            if (player != null) {
+                send(player, entry.getValue());
+            }
+        }
+        _toAll.clear();
+        _toPlayer.clear();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Drops every queued cue.
+     */
+    void clear() {
+        _toAll.clear();
+        _toPlayer.clear();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the number of packets sent through this channel.
+     *
+     * @return the number of packets sent.
+     */
+    public long getPacketsSent() {
+        return _sent;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the number of packets not sent because their cue was merged
+     * with another.
+     *
+     * @return the number of packets saved.
+     */
+    public long getPacketsSaved() {
+        return _saved;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Sends the given cues to a player.
+     *
+     * @param player the player.
+     * @param cues the cues.
+     */
+    private void send(Player player, Map<String, Cue> cues) {
+        for (Cue cue : cues.values()) {
+            cue._send.accept(player);
+            _sent++;
+            _saved += cue._requests - 1;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Queues a cue, replacing any queued cue with the same key.
+     *
+     * @param cues the cues to add to.
+     * @param key the key.
+     * @param send sends the cue to a player.
+     */
+    private void queue(Map<String, Cue> cues, String key, Consumer<Player> send) {
+        Cue previous = cues.get(key);
+        cues.put(key, new Cue(send, previous == null ? 1 : previous._requests + 1));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the given player's cues, creating them if necessary.
+     *
+     * @param player the player.
+     * @return the player's cues.
+     */
+    private LinkedHashMap<String, Cue> forPlayer(Player player) {
+        return _toPlayer.computeIfAbsent(player.getUniqueId(), k -> new LinkedHashMap<>());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the key for the given sound.
+     *
+     * @param sound the sound.
+     * @return the key.
+     */
+    private static String soundKey(Sound sound) {
+        return "sound:" + sound.name();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * A queued cue, with the number of times it has been requested this tick.
+     */
+    private static final class Cue {
+
+        private final Consumer<Player> _send;
+
+        private final int _requests;
+
+        Cue(Consumer<Player> send, int requests) {
+            _send = send;
+            _requests = requests;
+        }
+
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import com.destroystokyo.paper.event.entity.EnderDragonFireballHitEvent;
+import com.destroystokyo.paper.event.entity.EnderDragonFlameEvent;
+import com.destroystokyo.paper.event.entity.EnderDragonShootFireballEvent;
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.AreaEffectCloudApplyEvent;
+import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.EnderDragonChangePhaseEvent;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.entity.EntityUnleashEvent;
+import org.bukkit.event.entity.ProjectileLaunchEvent;
+
+// ------------------------------------------------------------------------
+/**
+ * Receives the events fights react to and passes each one to the fight in
+ * progress in the event's world, if there is one. Registered once, when the
+ * plugin is enabled, so the cost of an event is a single registry lookup no
+ * matter how many fights are running, and a fight stops receiving events as
+ * soon as it finishes.
+ */
+public class FightEventRouter implements Listener {
+
+    /**
+     * The fights to dispatch to.
+     */
+    private final FightRegistry _fights;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param fights the fights to dispatch to.
+     */
+    FightEventRouter(FightRegistry fights) {
+        _fights = fights;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the fight in progress in the given entity's world.
+     *
+     * @param entity the entity.
+     * @return the fight, or null if there is none.
+     */
+    private EnderDragonFight getFight(Entity entity) {
+        return _fights.getActive(entity.getWorld());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onEntityPickupItem(EntityPickupItemEvent).
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onEntityPickupItem(EntityPickupItemEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onEntityPickupItem(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onCreatureSpawn(CreatureSpawnEvent).
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onCreatureSpawn(CreatureSpawnEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onCreatureSpawn(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onEntityDeath(EntityDeathEvent).
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onEntityDeath(EntityDeathEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onEntityDeath(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onEntityUnleash(EntityUnleashEvent).
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onEntityUnleash(EntityUnleashEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onEntityUnleash(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onShulkerShoot(ProjectileLaunchEvent).
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onProjectileLaunch(ProjectileLaunchEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onShulkerShoot(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onDragonFlame(EnderDragonFlameEvent).
+     * @apiNote Requires Paper.
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onDragonFlame(EnderDragonFlameEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onDragonFlame(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onDragonFireballImpact(EnderDragonFireballHitEvent).
+     * @apiNote Requires Paper.
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onDragonFireballImpact(EnderDragonFireballHitEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onDragonFireballImpact(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onAreaEffectCloudApplyEvent(AreaEffectCloudApplyEvent).
+     */
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onAreaEffectCloudApply(AreaEffectCloudApplyEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onAreaEffectCloudApplyEvent(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onDragonFireball(EnderDragonShootFireballEvent).
+     * @apiNote Requires Paper.
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onDragonFireball(EnderDragonShootFireballEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onDragonFireball(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onEntityRemoveFromWorld(EntityRemoveFromWorldEvent).
+     * @apiNote Requires Paper.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityRemoveFromWorld(EntityRemoveFromWorldEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onEntityRemoveFromWorld(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onDragonPhaseChange(EnderDragonChangePhaseEvent).
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onDragonPhaseChange(EnderDragonChangePhaseEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onDragonPhaseChange(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onEntityDamage(EntityDamageEvent).
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onEntityDamage(EntityDamageEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onEntityDamage(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EnderDragonFight#onEntityDamageByEntity(EntityDamageByEntityEvent).
+     */
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onEntityDamageByEntity(EntityDamageByEntityEvent e) {
+        EnderDragonFight fight = getFight(e.getEntity());
+        if (fight != null) {
+            fight.onEntityDamageByEntity(e);
+        }
+    }
+
+}
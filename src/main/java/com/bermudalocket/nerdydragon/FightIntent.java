@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Damageable;
+import org.bukkit.entity.EnderDragon;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+
+import java.util.UUID;
+import java.util.function.Predicate;
+
+// ------------------------------------------------------------------------
+/**
+ * A change to the world which a task wants made. Intents may be created and
+ * posted from any thread with {@link EnderDragonFight#post(FightIntent)}, but
+ * are only ever applied on the main thread, at the start of the fight's next
+ * tick. Since the world may have moved on since the intent was made, an
+ * intent should re-check anything it depends on when applied.
+ */
+@FunctionalInterface
+public interface FightIntent {
+
+    // ------------------------------------------------------------------------
+    /**
+     * Applies this intent. Always called on the main thread.
+     *
+     * @param fight the fight.
+     */
+    void apply(EnderDragonFight fight);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns an intent to put the dragon into the given phase, provided the
+     * live dragon still satisfies the given condition.
+     *
+     * @param phase the phase.
+     * @param condition checked against the live dragon when applied.
+     * @return the intent.
+     */
+    static FightIntent setPhase(EnderDragon.Phase phase, Predicate<EnderDragon> condition) {
+        return fight -> {
+            EnderDragon dragon = fight.getDragon();
+            if (dragon != null && !dragon.isDead() && condition.test(dragon)) {
+                dragon.setPhase(phase);
+            }
+        };
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns an intent to spawn a reinforcement.
+     *
+     * @param location the location; copied, so the caller may reuse it.
+     * @param type the entity type.
+     * @return the intent.
+     */
+    static FightIntent spawn(Location location, EntityType type) {
+        Location copy = location.clone();
+        return fight -> fight.spawnReinforcement(copy, type);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns an intent to damage an entity, if it is still alive.
+     *
+     * @param entity the entity's UUID.
+     * @param amount the damage.
+     * @return the intent.
+     */
+    static FightIntent damage(UUID entity, double amount) {
+        return fight -> {
+            Entity target = Bukkit.getEntity(entity);
+            if (target instanceof Damageable && !target.isDead()) {
+                ((Damageable) target).damage(amount);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.World;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * The fights in progress, at most one per world, keyed by the world's UID.
+ * A fight is registered when it starts and unregistered once it has finished
+ * cleaning up.
+ *
+ * Main thread only.
+ */
+public class FightRegistry {
+
+    /**
+     * The fights, by world UID.
+     */
+    private final HashMap<UUID, EnderDragonFight> _fights = new HashMap<>();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the fight in the given world.
+     *
+     * @param world the world.
+     * @return the fight, or null if there is none.
+     */
+    public EnderDragonFight get(World world) {
+        return world == null ? null : _fights.get(world.getUID());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the fight in the given world if it is still in progress.
+     *
+     * @param world the world.
+     * @return the fight, or null if there is none or it has finished.
+     */
+    public EnderDragonFight getActive(World world) {
+        EnderDragonFight fight = get(world);
+        return (fight != null && fight.isActive()) ? fight : null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Registers a fight, replacing any earlier fight in the same world.
+     *
+     * @param fight the fight.
+     */
+    void register(EnderDragonFight fight) {
+        _fights.put(fight.getWorld().getUID(), fight);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Unregisters a fight, if it is still the fight registered in its world.
+     *
+     * @param fight the fight.
+     */
+    void unregister(EnderDragonFight fight) {
+        _fights.remove(fight.getWorld().getUID(), fight);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the registered fights.
+     *
+     * @return an unmodifiable view of the fights.
+     */
+    public Collection<EnderDragonFight> getAll() {
+        return Collections.unmodifiableCollection(_fights.values());
+    }
+
+}
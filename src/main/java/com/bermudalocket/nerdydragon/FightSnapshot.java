@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.entity.EnderDragon;
+
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * An immutable copy of the state of a fight, taken on the main thread once
+ * per tick. Async tasks read this instead of touching the dragon, and act on
+ * what they find by posting a {@link FightIntent}.
+ */
+public final class FightSnapshot {
+
+    /**
+     * The fight's tick counter when this snapshot was taken.
+     */
+    private final long _tick;
+
+    private final FightStage _stage;
+
+    private final EnderDragon.Phase _phase;
+
+    private final double _dragonX, _dragonY, _dragonZ;
+
+    private final double _dragonHealth;
+
+    private final double _dragonMaxHealth;
+
+    /**
+     * The players near the portal.
+     */
+    private final UUID[] _players;
+
+    /**
+     * The players' positions, as consecutive (x, y, z) triples.
+     */
+    private final double[] _playerPositions;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor. The arrays are taken as-is and must not be modified
+     * afterwards.
+     */
+    FightSnapshot(long tick, FightStage stage, EnderDragon.Phase phase,
+                  double dragonX, double dragonY, double dragonZ,
+                  double dragonHealth, double dragonMaxHealth,
+                  UUID[] players, double[] playerPositions) {
+        _tick = tick;
+        _stage = stage;
+        _phase = phase;
+        _dragonX = dragonX;
+        _dragonY = dragonY;
+        _dragonZ = dragonZ;
+        _dragonHealth = dragonHealth;
+        _dragonMaxHealth = dragonMaxHealth;
+        _players = players;
+        _playerPositions = playerPositions;
+    }
+
+    public long getTick() { return _tick; }
+
+    public FightStage getStage() { return _stage; }
+
+    public EnderDragon.Phase getPhase() { return _phase; }
+
+    public double getDragonX() { return _dragonX; }
+
+    public double getDragonY() { return _dragonY; }
+
+    public double getDragonZ() { return _dragonZ; }
+
+    public double getDragonHealth() { return _dragonHealth; }
+
+    public double getDragonMaxHealth() { return _dragonMaxHealth; }
+
+    public int getPlayerCount() { return _players.length; }
+
+    public UUID getPlayer(int i) { return _players[i]; }
+
+    public double getPlayerX(int i) { return _playerPositions[3 * i]; }
+
+    public double getPlayerY(int i) { return _playerPositions[3 * i + 1]; }
+
+    public double getPlayerZ(int i) { return _playerPositions[3 * i + 2]; }
+
+}
@@ -16,12 +16,12 @@ import org.bukkit.boss.BarColor;
  */
 public enum FightStage {
 
-         // 1      2    3   4  5  6   7    8    9     10    11    12            13               14  15
-   FINISHED(0,     0,   0,  0, 0, 0,  0,   0,   0,     0,    0,    0, Color.PURPLE,  BarColor.GREEN, ""),
-      FIRST(0,     4,   1,  0, 9, 0,  0,   1,   1,  0.01,    0,  1.0, Color.PURPLE,  BarColor.GREEN, ChatColor.GREEN + "Stage I"),
-     SECOND(0.60,  4,   1, 10, 1, 1,  2,   5,  15,  0.20, 0.12, 0.25, Color.PURPLE, BarColor.YELLOW, ChatColor.GOLD + "Stage II"),
-      THIRD(0.30,  7,   3,  7, 2, 2,  4,  14,  40,  0.40, 0.30, 0.55,   Color.LIME,    BarColor.RED, ChatColor.RED + "Stage III"),
-     FOURTH(0,     10,  6,  3, 3, 3,  6,  25,  75,  0.75, 0.45, 0.85,  Color.BLACK, BarColor.PURPLE, ChatColor.DARK_RED + "S" + ChatColor.MAGIC + "" + ChatColor.DARK_RED + "t" + ChatColor.RESET + "" + ChatColor.DARK_RED + "age " + ChatColor.MAGIC + "IV");
+         // 1      2    3   4  5  6   7    8    9     10    11    12            13               14  15  16  17
+   FINISHED(0,     0,   0,  0, 0, 0,  0,   0,   0,     0,    0,    0, Color.PURPLE,  BarColor.GREEN, "",  0,  0),
+      FIRST(0,     4,   1,  0, 9, 0,  0,   1,   1,  0.01,    0,  1.0, Color.PURPLE,  BarColor.GREEN, ChatColor.GREEN + "Stage I",  8,  6),
+     SECOND(0.60,  4,   1, 10, 1, 1,  2,   5,  15,  0.20, 0.12, 0.25, Color.PURPLE, BarColor.YELLOW, ChatColor.GOLD + "Stage II", 16,  8),
+      THIRD(0.30,  7,   3,  7, 2, 2,  4,  14,  40,  0.40, 0.30, 0.55,   Color.LIME,    BarColor.RED, ChatColor.RED + "Stage III", 24, 12),
+     FOURTH(0,     10,  6,  3, 3, 3,  6,  25,  75,  0.75, 0.45, 0.85,  Color.BLACK, BarColor.PURPLE, ChatColor.DARK_RED + "S" + ChatColor.MAGIC + "" + ChatColor.DARK_RED + "t" + ChatColor.RESET + "" + ChatColor.DARK_RED + "age " + ChatColor.MAGIC + "IV", 32, 16);
 
     public double DRAGON_HP_LOW_BOUND; // 1
     public int MAX_EXTRA_POTION_DUR; // 2
@@ -38,11 +38,14 @@ public enum FightStage {
     public Color FLAME_COLOR; // 13
     public BarColor BOSS_BAR_COLOR; // 14
     public String DISPLAY_NAME; // 15
+    public int MAX_IN_FLIGHT; // 16
+    public int MAX_LIVE_ENDERMITES; // 17
 
     FightStage(double dragonHpLowBound, int maxExtraPotionDuration, int maxFireballs,
                int fireballTickIncrement, int maxEffects, int maxEndermites, int maxPhantoms,
                int minPhantomSize, int maxPhantomSize, double phantomChance, double dragonRecoilEffectChance,
-               double leavePortalChance, Color flameColor, BarColor bossBarColor, String displayName) {
+               double leavePortalChance, Color flameColor, BarColor bossBarColor, String displayName,
+               int maxInFlight, int maxLiveEndermites) {
         MAX_EXTRA_POTION_DUR = maxExtraPotionDuration;
         LEAVE_PORTAL_CHANCE = leavePortalChance;
 
@@ -64,6 +67,9 @@ public enum FightStage {
         DISPLAY_NAME = displayName;
         FLAME_COLOR = flameColor;
         BOSS_BAR_COLOR = bossBarColor;
+
+        MAX_IN_FLIGHT = maxInFlight;
+        MAX_LIVE_ENDERMITES = maxLiveEndermites;
     }
 
     public static FightStage getNext(FightStage stage) {
@@ -6,37 +6,43 @@
  */
 package com.bermudalocket.nerdydragon;
 
+import com.bermudalocket.nerdydragon.leaderboard.BinaryFightHistory;
+import com.bermudalocket.nerdydragon.leaderboard.FightHistory;
+import com.bermudalocket.nerdydragon.leaderboard.FightRecord;
+import com.bermudalocket.nerdydragon.leaderboard.IndexedLeaderboardStore;
+import com.bermudalocket.nerdydragon.leaderboard.LeaderboardStore;
+import com.bermudalocket.nerdydragon.leaderboard.PlayerIndex;
+import com.bermudalocket.nerdydragon.leaderboard.SqlLeaderboardStore;
+import com.bermudalocket.nerdydragon.leaderboard.YamlFightHistory;
+import com.bermudalocket.nerdydragon.util.OrderedPair;
 import org.apache.commons.lang.time.DurationFormatUtils;
-import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
-import org.bukkit.OfflinePlayer;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.List;
 import java.util.UUID;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 // ------------------------------------------------------------------------
 /**
- * A class handling all leaderboard functionality, including querying and i/o.
+ * A class handling all leaderboard functionality: formatting the answers to
+ * leaderboard queries, and handing fights and queries to the configured
+ * {@link LeaderboardStore}. Queries against a store which may block are run
+ * off the main thread, with their callbacks run back on it.
  */
 public class Leaderboard {
 
     /**
-     * A reference to "../plugins/NerdyDragon/leaderboard.yml".
+     * The store holding the fight history.
      */
-    private final File LEADERBOARD_FILE;
+    private final LeaderboardStore _store;
 
     /**
      * Calendar object used for converting timestamps.
@@ -48,108 +54,156 @@ public class Leaderboard {
      */
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("E MMM d y hh:mm:ss a");
 
-    // ------------------------------------------------------------------------
     /**
-     * Constructor.
+     * False until the store has been loaded (and, if necessary, migrated or
+     * converted).
      */
-    Leaderboard() {
-        LEADERBOARD_FILE = new File(NerdyDragon.PLUGIN.getDataFolder().getPath() + "/leaderboard.yml");
-    }
+    private boolean _ready = false;
 
-    // ------------------------------------------------------------------------
     /**
-     * Returns a freshly-loaded YamlConfiguration instance.
-     *
-     * @return a freshly-loaded YamlConfiguration instance.
+     * Fights finished while the leaderboard was loading, added once it is done.
      */
-    private YamlConfiguration getYAML() {
-        return YamlConfiguration.loadConfiguration(LEADERBOARD_FILE);
-    }
+    private final List<Runnable> _pending = new ArrayList<>();
+
+    /**
+     * The most recently started solo and group fights in the history, or null
+     * if there are none.
+     */
+    private FightRecord _lastSoloFight;
+
+    private FightRecord _lastGroupFight;
+
+    /**
+     * The player name dictionary, for display and tab completion. Only used
+     * for names; statistics come from the store.
+     */
+    private PlayerIndex _names = new PlayerIndex();
+
+    /**
+     * The number of fights shown per page of /nd-leaderboard top.
+     */
+    private static final int PAGE_SIZE = 5;
+
+    /**
+     * The reply to any query made while the leaderboard is loading.
+     */
+    private static final String LOADING = "The leaderboard is still loading. Try again in a moment.";
 
     // ------------------------------------------------------------------------
     /**
-     * Returns the YAML parent key for the given fight UUID, of the form
-     * "fight-history.[UUID]".
-     *
-     * @param fightId
-     * @return
+     * Constructor. Starts loading the configured store in the background.
      */
-    private static String getKey(UUID fightId) {
-        return "fight-history." + fightId.toString();
+    Leaderboard() {
+        _store = createStore(NerdyDragon.CONFIG.LEADERBOARD_FORMAT);
+        Thread.newAsyncThread(() -> {
+            HashMap<UUID, String> names = new HashMap<>();
+            FightRecord lastSolo = null;
+            FightRecord lastGroup = null;
+            long count = 0;
+            try {
+                _store.load(names);
+                lastSolo = _store.getLastFight(true);
+                lastGroup = _store.getLastFight(false);
+                count = _store.getCount(null);
+            } catch (IOException e) {
+                NerdyDragon.log("Couldn't load the fight history!");
+                e.printStackTrace();
+            }
+            final FightRecord lastSoloFight = lastSolo;
+            final FightRecord lastGroupFight = lastGroup;
+            final long loaded = count;
+            Thread.newThread(() -> {
+                _names.setNames(names);
+                _lastSoloFight = lastSoloFight;
+                _lastGroupFight = lastGroupFight;
+                _ready = true;
+                _pending.forEach(Runnable::run);
+                _pending.clear();
+                NerdyDragon.log("Loaded " + loaded + " fights into the leaderboard.");
+            });
+        });
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Returns all fights in the fight history. If type is true, this will return
-     * solo fights only. If type is false, this will return group fights only. If
-     * type is null, this will return both solo and group fights.
+     * Creates the store for the given history format: "yaml" (the default),
+     * "binary" or "sqlite". The binary and SQLite stores import the existing
+     * history the first time they are used.
+     *
+     * @param format the format.
+     * @return the store.
      */
-    private Set<UUID> getFights(FileConfiguration yaml, Boolean type) {
-        Predicate<UUID> predicate;
-        if (type == null) {
-            predicate = (fightId) -> getPlayers(fightId, yaml).size() >= 1;
-        } else if (type) {
-            predicate = (fightId) -> getPlayers(fightId, yaml).size() == 1;
-        } else {
-            predicate = (fightId) -> getPlayers(fightId, yaml).size() > 1;
+    private static LeaderboardStore createStore(String format) {
+        File dataFolder = NerdyDragon.PLUGIN.getDataFolder();
+        YamlFightHistory yaml = new YamlFightHistory(new File(dataFolder, "leaderboard.yml"));
+        switch (format.toLowerCase()) {
+            case "binary":
+                return new IndexedLeaderboardStore(new BinaryFightHistory(new File(dataFolder, "history"), yaml));
+            case "sqlite": {
+                BinaryFightHistory binary = new BinaryFightHistory(new File(dataFolder, "history"), null);
+                FightHistory source = binary.exists() ? binary : yaml;
+                return new SqlLeaderboardStore(new File(dataFolder, "leaderboard.db"), source);
+            }
+            default:
+                return new IndexedLeaderboardStore(yaml);
         }
-        return yaml.getConfigurationSection("fight-history")
-            .getKeys(false)
-            .stream()
-            .map(UUID::fromString)
-            .filter(predicate)
-            .collect(Collectors.toSet());
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Returns the time the fight began as a Unix timestamp.
+     * Runs a query against the store, then passes its result to the callback
+     * on the main thread. If the store may block, the query runs off the main
+     * thread and the callback is run on a later tick.
      *
-     * @param fightId the fight UUID.
-     * @param yaml the YAML instance.
-     * @return the time the fight began as a Unix timestamp.
+     * @param query the query.
+     * @param callback the callback.
      */
-    private long getTimeStarted(UUID fightId, FileConfiguration yaml) {
-        return yaml.getLong(getKey(fightId) + ".time-started", 0);
+    private <T> void query(Function<LeaderboardStore, T> query, Consumer<T> callback) {
+        if (_store.isBlocking()) {
+            Thread.newAsyncThread(() -> {
+                T result = query.apply(_store);
+                Thread.newThread(() -> callback.accept(result));
+            });
+        } else {
+            callback.accept(query.apply(_store));
+        }
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Returns the duration of the fight in milliseconds.
-     *
-     * @param fightId the fight UUID.
-     * @param yaml the YAML instance.
-     * @return the duration of the fight in milliseconds.
+     * Writes any buffered fights and closes the store. Blocks; only called
+     * when the plugin is disabled.
      */
-    private long getDuration(UUID fightId, FileConfiguration yaml) {
-        return yaml.getLong(getKey(fightId) + ".duration", 0);
+    void close() {
+        _store.close();
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Returns a set of player('s names) involved in the given fight.
+     * Returns the most recently started fight of the given category in the
+     * history.
      *
-     * @param fightId the fight UUID.
-     * @param yaml the YAML instance.
-     * @return a set of player('s names) involved in the given fight.
+     * @param solo true for solo, false for group, null for all.
+     * @return the most recent fight, or null if there is none (or the
+     *         leaderboard is still loading).
      */
-    private Set<String> getPlayers(UUID fightId, FileConfiguration yaml) {
-        return yaml.getConfigurationSection(getKey(fightId) + ".players")
-                   .getKeys(false);
+    public FightRecord getLastFight(Boolean solo) {
+        if (solo == null) {
+            return FightRecord.latest(_lastSoloFight, _lastGroupFight);
+        }
+        return solo ? _lastSoloFight : _lastGroupFight;
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Returns the overall percentage of damage done to the dragon by the given
-     * player in the given fight.
+     * Returns the name of the given player, falling back to their UUID.
      *
-     * @param fightId the fight UUID.
-     * @param player the player's name.
-     * @param yaml the YAML instance.
-     * @return the overall percentage of damage done by the player.
+     * @param player the player's UUID.
+     * @return the player's name.
      */
-    private double getPlayerDamagePercent(UUID fightId, String player, FileConfiguration yaml) {
-        return yaml.getDouble(getKey(fightId) + ".players." + player, 0);
+    private String getPlayerName(UUID player) {
+        String name = _names.getName(player);
+        return (name != null) ? name : player.toString();
     }
 
     // ------------------------------------------------------------------------
@@ -175,90 +229,233 @@ public class Leaderboard {
 
     // ------------------------------------------------------------------------
     /**
-     * Returns basic statistics, currently mean and standard deviation. If solo
-     * is null, all fights will be considered; if solo is true, only solo fights
-     * will be considered; and if solo is false, only group fights will be
-     * considered.
+     * Describes basic statistics: mean, standard deviation, median and 90th
+     * percentile. If solo is null, all fights will be considered; if solo is
+     * true, only solo fights will be considered; and if solo is false, only
+     * group fights will be considered.
      *
      * @param solo true for solo, false for group, null for all.
-     * @return a string of basic statistics.
+     * @param callback receives a string of basic statistics.
      */
-    public String getStatistics(Boolean solo) {
-        // mean duration
-        YamlConfiguration yaml = getYAML();
-        Set<UUID> fights = getFights(yaml, solo);
-        if (fights.size() == 0) {
-            return "There are no fights matching that criteria.";
+    public void getStatistics(Boolean solo, Consumer<String> callback) {
+        if (!_ready) {
+            callback.accept(LOADING);
+            return;
         }
-        long mean = fights.stream()
-            .mapToLong(fightId -> getDuration(fightId, yaml))
-            .sum() / fights.size();
-        double squaredDev = fights.stream()
-            .mapToDouble(fightId -> Math.pow(getDuration(fightId, yaml) - mean, 2))
-            .sum() / fights.size();
-        long stDev = Math.round(Math.sqrt(squaredDev)); // won't be called often
-
-        return String.format("The mean is %s and the standard deviation is %s",
-            emph(DurationFormatUtils.formatDuration(mean, Util.getHMSFormat(mean))),
-            emph(DurationFormatUtils.formatDuration(stDev, Util.getHMSFormat(stDev))));
+        query(store -> store.getSummary(solo), statistics -> {
+            if (statistics.getCount() == 0) {
+                callback.accept("There are no fights matching that criteria.");
+                return;
+            }
+            callback.accept(String.format("Over %s fights, the mean is %s and the standard deviation is %s. The median is %s and the 90th percentile is %s.",
+                emph(String.valueOf(statistics.getCount())),
+                emph(formatDuration(Math.round(statistics.getMean()))),
+                emph(formatDuration(Math.round(statistics.getStandardDeviation()))),
+                emph(formatDuration(Math.round(statistics.getMedian()))),
+                emph(formatDuration(Math.round(statistics.getNinetiethPercentile())))));
+        });
     }
 
-    public LinkedHashSet<String> getTop(int n, Boolean solo) {
-        YamlConfiguration yaml = getYAML();
-        LinkedHashSet<String> results = new LinkedHashSet<>();
-        TreeMap<Long, UUID> sortMap = new TreeMap<>();
-        for (UUID fightId : getFights(yaml, solo)) {
-            sortMap.put(getDuration(fightId, yaml), fightId);
+    // ------------------------------------------------------------------------
+    /**
+     * Describes where a fight of the given duration falls among the fights of
+     * the given category.
+     *
+     * @param solo true for solo, false for group, null for all.
+     * @param duration the duration in milliseconds.
+     * @param callback receives a description of the fight's percentile.
+     */
+    public void getRank(Boolean solo, long duration, Consumer<String> callback) {
+        if (!_ready) {
+            callback.accept(LOADING);
+            return;
         }
-        if (sortMap.isEmpty()) {
-            results.add("There are no fights matching that criteria.");
-            return results;
+        query(store -> new OrderedPair<>((double) store.getCount(solo), store.getFractionFaster(solo, duration)), result -> {
+            long count = result.getA().longValue();
+            if (count == 0) {
+                callback.accept("There are no fights matching that criteria.");
+                return;
+            }
+            double slower = 100 * (1 - result.getB());
+            callback.accept(String.format("A fight lasting %s is faster than or as fast as %s of %s fights.",
+                emph(formatDuration(duration)),
+                emph(String.format("%.1f%%", slower)),
+                emph(String.valueOf(count))));
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Describes the given player's fight history.
+     *
+     * @param name the player's name, case-insensitive.
+     * @param callback receives the lines of the description.
+     */
+    public void getPlayerStatistics(String name, Consumer<List<String>> callback) {
+        if (!_ready) {
+            callback.accept(Collections.singletonList(LOADING));
+            return;
         }
-        if (n > sortMap.size()) {
-            n = sortMap.size();
+        UUID uuid = _names.getUUID(name);
+        if (uuid == null) {
+            callback.accept(Collections.singletonList("There are no fights involving " + emph(name) + "."));
+            return;
         }
-        for (int i = 1; i <= n; i++) {
-            Map.Entry<Long, UUID> next = sortMap.pollFirstEntry();
-            UUID fightId = next.getValue();
-            long duration = next.getKey();
-            long time = getTimeStarted(fightId, yaml);
-            String playersString = getPlayers(fightId, yaml)
-                .stream()
-                .map(player -> String.format("%s%s%s (%.2f%%)", ChatColor.DARK_PURPLE, player, ChatColor.GRAY, getPlayerDamagePercent(fightId,player,yaml)))
-                .collect(Collectors.joining(", "));
-            results.add("#" + i + ". " + emph(DurationFormatUtils.formatDuration(duration, Util.getHMSFormat(duration))) + " by " + playersString + " on " + emph(longToDate(time)));
+        query(store -> store.getPlayerStatistics(uuid), statistics -> {
+            List<String> lines = new ArrayList<>();
+            if (statistics == null) {
+                lines.add("There are no fights involving " + emph(name) + ".");
+                callback.accept(lines);
+                return;
+            }
+            lines.add(emph(getPlayerName(uuid)) + " has fought the dragon " + emph(String.valueOf(statistics.getFights())) +
+                      " time(s) and slain it " + emph(String.valueOf(statistics.getKills())) + " time(s).");
+            lines.add("Personal best: " + emph(formatDuration(statistics.getBestTime())));
+            lines.add(String.format("Damage share: %s cumulative, %s on average",
+                emph(String.format("%.2f%%", 100 * statistics.getCumulativeShare())),
+                emph(String.format("%.2f%%", 100 * statistics.getAverageShare()))));
+            lines.add("Last fight: " + emph(longToDate(statistics.getLastFight())));
+            callback.accept(lines);
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the names of players in the history starting with the given
+     * prefix, for tab completion.
+     *
+     * @param prefix the prefix.
+     * @return up to 20 matching names.
+     */
+    public List<String> completePlayerName(String prefix) {
+        return _names.complete(prefix, 20);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Formats a duration in milliseconds using the most appropriate HMS format.
+     *
+     * @param duration the duration.
+     * @return the formatted duration.
+     */
+    private static String formatDuration(long duration) {
+        return DurationFormatUtils.formatDuration(duration, Util.getHMSFormat(duration));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Describes one page of the fastest fights in the given category.
+     *
+     * @param page the page number, starting at 1.
+     * @param solo true for solo, false for group, null for all.
+     * @param callback receives the lines of the page.
+     */
+    public void getTop(int page, Boolean solo, Consumer<List<String>> callback) {
+        if (!_ready) {
+            callback.accept(Collections.singletonList(LOADING));
+            return;
         }
-        return results;
+        int offset = (page - 1) * PAGE_SIZE;
+        query(store -> new TopPage(store.getCount(solo), store.getTop(solo, offset, PAGE_SIZE)), top -> {
+            List<String> results = new ArrayList<>();
+            if (top._count == 0) {
+                results.add("There are no fights matching that criteria.");
+                callback.accept(results);
+                return;
+            }
+            long pageCount = (top._count + PAGE_SIZE - 1) / PAGE_SIZE;
+            if (top._fights.isEmpty()) {
+                results.add("There are only " + pageCount + " page(s).");
+                callback.accept(results);
+                return;
+            }
+            int rank = offset + 1;
+            for (FightRecord fight : top._fights) {
+                StringBuilder players = new StringBuilder();
+                for (int i = 0; i < fight.getPlayerCount(); i++) {
+                    if (i > 0) {
+                        players.append(", ");
+                    }
+                    players.append(String.format("%s%s%s (%.2f%%)", ChatColor.DARK_PURPLE, getPlayerName(fight.getPlayer(i)), ChatColor.GRAY, 100 * fight.getShare(i)));
+                }
+                results.add("#" + rank + ". " + emph(formatDuration(fight.getDuration())) + " by " + players + " on " + emph(longToDate(fight.getTimeStarted())));
+                rank++;
+            }
+            results.add("Page " + emph(String.valueOf(page)) + " of " + emph(String.valueOf(pageCount)));
+            callback.accept(results);
+        });
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Adds a fight to the fight history.
+     * Adds a fight to the fight history. If the history is still loading, the
+     * fight is added once it finishes.
      *
      * @param fight the fight.
      * @param duration the duration.
      * @param playerDamage a map from player UUID to normalized damage percent.
+     * @param killer the player credited with the kill; may be null.
      */
-    void add(EnderDragonFight fight, long duration, HashMap<UUID, Double> playerDamage) {
-        FileConfiguration yaml = YamlConfiguration.loadConfiguration(LEADERBOARD_FILE);
-        ConfigurationSection section = yaml.getConfigurationSection("fight-history");
-        if (section == null) {
-            section = yaml.createSection("fight-history");
+    void add(EnderDragonFight fight, long duration, HashMap<UUID, Double> playerDamage, UUID killer) {
+        UUID fightId = fight.getUUID();
+        HashMap<UUID, Double> shares = new HashMap<>(playerDamage);
+        HashMap<UUID, String> names = new HashMap<>();
+        shares.keySet().forEach(uuid -> names.put(uuid, fight.getParticipantName(uuid)));
+        UUID[] players = shares.keySet().toArray(new UUID[0]);
+        double[] playerShares = new double[players.length];
+        for (int i = 0; i < players.length; i++) {
+            playerShares[i] = shares.get(players[i]);
         }
-        ConfigurationSection thisFight = section.createSection(fight.getUUID().toString());
-        thisFight.set("time-started", fight._timeStarted);
-        thisFight.set("duration", duration);
-        ConfigurationSection players = thisFight.createSection("players");
-        for (UUID uuid : playerDamage.keySet()) {
-            OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(uuid);
-            String name = offlinePlayer.isOnline() ? Bukkit.getPlayer(uuid).getName() : offlinePlayer.getName();
-            players.set(name, playerDamage.get(uuid));
+        FightRecord record = new FightRecord(fightId, fight._timeStarted, duration, players, playerShares, killer);
+        Runnable addFight = () -> {
+            _names.setNames(names);
+            if (record.isSolo()) {
+                _lastSoloFight = FightRecord.latest(_lastSoloFight, record);
+            } else {
+                _lastGroupFight = FightRecord.latest(_lastGroupFight, record);
+            }
+            _store.add(record, names);
+            if (_store.isBlocking()) {
+                Thread.newAsyncThread(this::flush);
+            } else {
+                flush();
+            }
+        };
+        if (_ready) {
+            addFight.run();
+        } else {
+            _pending.add(addFight);
         }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Persists any fights buffered by the store.
+     */
+    private void flush() {
         try {
-            yaml.save(LEADERBOARD_FILE);
+            _store.flush();
         } catch (IOException e) {
+            NerdyDragon.log("Couldn't save the fight history!");
             e.printStackTrace();
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * The result of a top query: the size of the category and one page of it.
+     */
+    private static final class TopPage {
+
+        private final long _count;
+
+        private final List<FightRecord> _fights;
+
+        TopPage(long count, List<FightRecord> fights) {
+            _count = count;
+            _fights = fights;
+        }
+
+    }
+
 }
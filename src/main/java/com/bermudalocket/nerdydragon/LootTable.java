@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// ------------------------------------------------------------------------
+/**
+ * An immutable, pre-compiled loot table. A table is made of tiers keyed by
+ * the minimum share of the dragon's damage the recipient must have dealt;
+ * the highest tier the recipient qualifies for is used. Each tier has a set
+ * of items which are always given and a set of weighted items which are
+ * drawn a fixed number of times.
+ *
+ * The item stacks held here are templates and are never handed out
+ * directly; {@link #roll(double)} always returns clones.
+ */
+public class LootTable {
+
+    /**
+     * The tiers of this table, sorted by descending minimum damage share.
+     */
+    private final Tier[] _tiers;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param tiers the tiers.
+     */
+    private LootTable(List<Tier> tiers) {
+        _tiers = tiers.stream()
+                      .sorted(Comparator.comparingDouble((Tier tier) -> tier._minShare).reversed())
+                      .toArray(Tier[]::new);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Rolls this table for a recipient with the given share of the damage.
+     *
+     * @param damageShare the recipient's normalized damage share, in [0, 1].
+     * @return freshly cloned loot; empty if no tier applies.
+     */
+    public List<ItemStack> roll(double damageShare) {
+        for (Tier tier : _tiers) {
+            if (damageShare >= tier._minShare) {
+                return tier.roll();
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Compiles the loot table described by the given configuration section.
+     * Each key of the section is a tier.
+     *
+     * @param section the section; may be null.
+     * @return the compiled table, or null if the section is missing or
+     *         describes no tiers.
+     */
+    static LootTable compile(ConfigurationSection section) {
+        if (section == null) {
+            return null;
+        }
+        List<Tier> tiers = new ArrayList<>();
+        for (String tierName : section.getKeys(false)) {
+            ConfigurationSection tierSection = section.getConfigurationSection(tierName);
+            if (tierSection == null) {
+                continue;
+            }
+            List<ItemStack> guaranteed = new ArrayList<>();
+            List<ItemStack> weighted = new ArrayList<>();
+            List<Integer> weights = new ArrayList<>();
+            ConfigurationSection items = tierSection.getConfigurationSection("items");
+            if (items != null) {
+                for (String itemName : items.getKeys(false)) {
+                    ConfigurationSection itemSection = items.getConfigurationSection(itemName);
+                    ItemStack item = (itemSection == null) ? null : compileItem(itemSection);
+                    if (item == null) {
+                        NerdyDragon.log("Skipping invalid loot item " + section.getName() + "." + tierName + "." + itemName);
+                        continue;
+                    }
+                    int weight = itemSection.getInt("weight", 0);
+                    if (weight > 0) {
+                        weighted.add(item);
+                        weights.add(weight);
+                    } else {
+                        guaranteed.add(item);
+                    }
+                }
+            }
+            double minShare = tierSection.getDouble("min-damage-share", 0);
+            int rolls = weighted.isEmpty() ? 0 : tierSection.getInt("rolls", 1);
+            if (rolls < 0) {
+                NerdyDragon.log("Invalid loot rolls " + rolls + " in " + section.getName() + "." + tierName + "; using 0");
+                rolls = 0;
+            }
+            tiers.add(new Tier(minShare, rolls, guaranteed, weighted, weights));
+        }
+        return tiers.isEmpty() ? null : new LootTable(tiers);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Compiles a single item template.
+     *
+     * @param section the item's section.
+     * @return the item, or null if its material is invalid.
+     */
+    private static ItemStack compileItem(ConfigurationSection section) {
+        Material material = Material.matchMaterial(section.getString("material", ""));
+        if (material == null) {
+            return null;
+        }
+        ItemStack item = new ItemStack(material, Math.max(1, section.getInt("amount", 1)));
+        String name = section.getString("name");
+        List<String> lore = section.getStringList("lore");
+        if (name != null || !lore.isEmpty()) {
+            ItemMeta meta = item.getItemMeta();
+            if (name != null) {
+                meta.setDisplayName(ChatColor.translateAlternateColorCodes('&', name));
+            }
+            if (!lore.isEmpty()) {
+                meta.setLore(lore.stream()
+                                 .map(line -> ChatColor.translateAlternateColorCodes('&', line))
+                                 .collect(Collectors.toList()));
+            }
+            item.setItemMeta(meta);
+        }
+        return item;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the built-in table, used when the configuration does not define
+     * one: an elytra and a dragon head for everyone.
+     *
+     * @return the built-in table.
+     */
+    static LootTable getDefault() {
+        ItemStack wings = new ItemStack(Material.ELYTRA, 1);
+        ItemMeta meta = wings.getItemMeta();
+        meta.setLore(Collections.singletonList(ChatColor.DARK_PURPLE + "I Survived The Dragon Fight!"));
+        wings.setItemMeta(meta);
+        List<ItemStack> guaranteed = Arrays.asList(wings, new ItemStack(Material.DRAGON_HEAD, 1));
+        return new LootTable(Collections.singletonList(
+            new Tier(0, 0, guaranteed, Collections.emptyList(), Collections.emptyList())
+        ));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * A single damage-share tier.
+     */
+    private static final class Tier {
+
+        private final double _minShare;
+
+        private final int _rolls;
+
+        private final ItemStack[] _guaranteed;
+
+        private final ItemStack[] _weighted;
+
+        /**
+         * Running sums of the weights of _weighted, for binary-search draws.
+         */
+        private final int[] _cumulativeWeights;
+
+        Tier(double minShare, int rolls, List<ItemStack> guaranteed, List<ItemStack> weighted, List<Integer> weights) {
+            _minShare = minShare;
+            _rolls = rolls;
+            _guaranteed = guaranteed.toArray(new ItemStack[0]);
+            _weighted = weighted.toArray(new ItemStack[0]);
+            _cumulativeWeights = new int[weights.size()];
+            int sum = 0;
+            for (int i = 0; i < _cumulativeWeights.length; i++) {
+                sum += weights.get(i);
+                _cumulativeWeights[i] = sum;
+            }
+        }
+
+        List<ItemStack> roll() {
+            List<ItemStack> loot = new ArrayList<>(_guaranteed.length + _rolls);
+            for (ItemStack item : _guaranteed) {
+                loot.add(item.clone());
+            }
+            if (_rolls > 0) {
+                int total = _cumulativeWeights[_cumulativeWeights.length - 1];
+                for (int i = 0; i < _rolls; i++) {
+                    int pick = MathUtil.random(total - 1) + 1;
+                    int index = Arrays.binarySearch(_cumulativeWeights, pick);
+                    if (index < 0) {
+                        index = -index - 1;
+                    }
+                    loot.add(_weighted[index].clone());
+                }
+            }
+            return loot;
+        }
+
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import com.google.common.collect.ImmutableSet;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.Arrays;
+import java.util.Set;
+
+// ------------------------------------------------------------------------
+/**
+ * Tracks the loaded worlds in which the dragon death sound is mirrored. The
+ * configured world names are resolved once and the resulting array is kept
+ * up to date as worlds load and unload, so worlds loaded after the plugin
+ * (e.g. by Multiverse) are picked up without a reload.
+ */
+public class MirrorWorlds implements Listener {
+
+    /**
+     * The names of the worlds to mirror, as configured.
+     */
+    private Set<String> _names = ImmutableSet.of();
+
+    /**
+     * The currently-loaded mirror worlds.
+     */
+    private World[] _worlds = new World[0];
+
+    // ------------------------------------------------------------------------
+    /**
+     * Sets the names of the worlds to mirror and re-resolves them against the
+     * currently-loaded worlds.
+     *
+     * @param names the world names.
+     */
+    void setNames(Set<String> names) {
+        _names = ImmutableSet.copyOf(names);
+        _worlds = Bukkit.getWorlds().stream()
+                        .filter(world -> _names.contains(world.getName()))
+                        .toArray(World[]::new);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the loaded mirror worlds. The array is shared and must not be
+     * modified.
+     *
+     * @return the loaded mirror worlds.
+     */
+    World[] getWorlds() {
+        return _worlds;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Starts mirroring a configured world when it loads.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent e) {
+        World world = e.getWorld();
+        if (!_names.contains(world.getName())) {
+            return;
+        }
+        for (World mirror : _worlds) {
+            if (mirror == world) {
+                return;
+            }
+        }
+        World[] worlds = Arrays.copyOf(_worlds, _worlds.length + 1);
+        worlds[_worlds.length] = world;
+        _worlds = worlds;
+        NerdyDragon.log("Now mirroring the dragon death sound in " + world.getName());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Stops mirroring a world when it unloads.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent e) {
+        World world = e.getWorld();
+        if (_names.contains(world.getName())) {
+            _worlds = Arrays.stream(_worlds)
+                            .filter(mirror -> mirror != world)
+                            .toArray(World[]::new);
+        }
+    }
+
+}
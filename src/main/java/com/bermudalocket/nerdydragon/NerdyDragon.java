@@ -12,11 +12,14 @@ import com.bermudalocket.nerdydragon.commands.LeaderboardCommand;
 import com.bermudalocket.nerdydragon.commands.PluginStateCommand;
 import com.bermudalocket.nerdydragon.commands.ReloadCommand;
 import com.destroystokyo.paper.event.entity.EntityTeleportEndGatewayEvent;
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.entity.EnderDragon;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
@@ -29,6 +32,10 @@ import org.bukkit.event.entity.EntityDeathEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
 // ------------------------------------------------------------------------
 /**
  * The main plugin and event-handling class.
@@ -41,9 +48,25 @@ public class NerdyDragon extends JavaPlugin implements Listener {
     public static NerdyDragon PLUGIN;
 
     /**
-     * This plugin's configuration.
+     * This plugin's configuration. Replaced, never modified, when the
+     * configuration is reloaded; read it once per use.
+     */
+    public static volatile Configuration CONFIG;
+
+    /**
+     * The pillar locations and saved fights, kept in state.yml.
+     */
+    static StateFile STATE;
+
+    /**
+     * The loaded worlds in which the dragon death sound is mirrored.
+     */
+    static MirrorWorlds MIRROR_WORLDS;
+
+    /**
+     * The pre-built heads worn by Vexes.
      */
-    public static Configuration CONFIG;
+    static AdminHeads ADMIN_HEADS;
 
     /**
      * Manages the leaderboard: the getting and saving of fight history and
@@ -52,14 +75,19 @@ public class NerdyDragon extends JavaPlugin implements Listener {
     public static Leaderboard LEADERBOARD;
 
     /**
-     * The current fight or null if one does not exist.
-     *
-     * It doesn't really make much sense to NOT make this a global variable
-     * since it's not the intention of this plugin to facilitate multiple
-     * dragon fight instances. The NMS code also only allows for one instance
-     * as well.
+     * Tags the entities spawned by fights.
+     */
+    public static EntityTagStore TAGS;
+
+    /**
+     * The fights in progress, at most one per End world.
+     */
+    public static FightRegistry FIGHTS;
+
+    /**
+     * Scans the End worlds' arenas.
      */
-    public static EnderDragonFight FIGHT;
+    public static ArenaScanner ARENAS;
 
     // ------------------------------------------------------------------------
     /**
@@ -67,42 +95,219 @@ public class NerdyDragon extends JavaPlugin implements Listener {
      */
     public void onEnable() {
         PLUGIN = this;
-        CONFIG = new Configuration();
+        MIRROR_WORLDS = new MirrorWorlds();
+        ADMIN_HEADS = new AdminHeads();
+        FIGHTS = new FightRegistry();
+        ARENAS = new ArenaScanner();
+        saveDefaultConfig();
+        STATE = new StateFile(new File(getDataFolder(), "state.yml"));
+        STATE.load(getConfigFile());
+        publish(loadConfiguration());
+        TAGS = createTagStore(CONFIG.ENTITY_TAG_STORE);
         LEADERBOARD = new Leaderboard();
 
         getServer().getPluginManager().registerEvents(this, this);
+        getServer().getPluginManager().registerEvents(MIRROR_WORLDS, this);
+        getServer().getPluginManager().registerEvents(new FightEventRouter(FIGHTS), this);
+        getServer().getPluginManager().registerEvents(ARENAS, this);
 
         registerCommand(new ReloadCommand());
         registerCommand(new FightCommand());
         registerCommand(new PluginStateCommand());
         registerCommand(new LeaderboardCommand());
 
-        checkForExistingFight();
+        checkForExistingFights();
+        Thread.newThread(this::scanArenas);
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Checks config for a serialized fight and loads it if present.
+     * Scans the arenas of the loaded fight worlds which haven't been scanned
+     * yet, so that fights start with their geometry ready.
      */
-    private void checkForExistingFight() {
-        ConfigurationSection savedFight = getConfig().getConfigurationSection("saved-fight");
-        if (savedFight != null) {
-            Thread.newThread(5, () -> FIGHT = new EnderDragonFight(savedFight));
+    private void scanArenas() {
+        Configuration config = CONFIG;
+        for (World world : getServer().getWorlds()) {
+            if (config.isFightWorld(world)) {
+                ARENAS.ensure(world);
+            }
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Reads the configuration on startup, falling back to the bundled
+     * defaults if the file can't be read.
+     *
+     * @return the configuration.
+     */
+    private static Configuration loadConfiguration() {
+        try {
+            return Configuration.load(getConfigFile());
+        } catch (IOException | InvalidConfigurationException e) {
+            log("Couldn't read config.yml; using the defaults: " + e.getMessage());
+            return Configuration.getDefault();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Reloads the configuration. The file is read and parsed off the main
+     * thread; the new configuration then replaces the current one on the
+     * main thread. If it can't be read, the current configuration is kept.
+     *
+     * @param sender the sender to tell when the reload is done.
+     */
+    public static void reloadConfiguration(CommandSender sender) {
+        log("Reloading configuration.");
+        Thread.newAsyncThread(() -> {
+            Configuration config;
+            try {
+                PLUGIN.saveDefaultConfig();
+                config = Configuration.load(getConfigFile());
+            } catch (IOException | InvalidConfigurationException e) {
+                log("Couldn't reload config.yml: " + e.getMessage());
+                Thread.newThread(() -> message(sender, "Couldn't reload config.yml; kept the current configuration. " + e.getMessage()));
+                return;
+            }
+            Thread.newThread(() -> {
+                publish(config);
+                message(sender, "NerdyDragon reloaded!");
+            });
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Makes the given configuration current and applies the settings which
+     * are held elsewhere.
+     *
+     * @param config the configuration.
+     */
+    private static void publish(Configuration config) {
+        CONFIG = config;
+        MIRROR_WORLDS.setNames(config.getMirrorWorldNames());
+        ADMIN_HEADS.setIds(config.getAdminHeadIds());
+        log("Configuration successfully reloaded.");
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Soft-enables/disables the plugin, i.e. the main CreatureSpawnEvent
+     * listener in the main plugin class will short-circuit. The setting is
+     * written to config.yml off the main thread.
+     *
+     * @param enabled if the plugin is enabled.
+     */
+    public static void setEnabled(boolean enabled) {
+        CONFIG = CONFIG.withEnabled(enabled);
+        Thread.newAsyncThread(() -> {
+            try {
+                Configuration.saveEnabled(getConfigFile(), enabled);
+            } catch (IOException | InvalidConfigurationException e) {
+                log("Couldn't save the enabled setting to config.yml: " + e.getMessage());
+            }
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the configuration file.
+     *
+     * @return the configuration file.
+     */
+    private static File getConfigFile() {
+        return new File(PLUGIN.getDataFolder(), "config.yml");
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Creates the entity tag store with the given name, falling back to
+     * persistent data if EntityMeta is selected but not installed.
+     *
+     * @param name the store's name.
+     * @return the store.
+     */
+    private static EntityTagStore createTagStore(String name) {
+        if (EntityMetaTagStore.NAME.equalsIgnoreCase(name)) {
+            if (isEntityMetaInstalled()) {
+                return new EntityMetaTagStore();
+            }
+            log("EntityMeta is not installed; tagging entities with persistent data instead.");
+        } else if (!PersistentDataTagStore.NAME.equalsIgnoreCase(name)) {
+            log("Unknown entity tag store \"" + name + "\"; using " + PersistentDataTagStore.NAME + ".");
+        }
+        return new PersistentDataTagStore();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if the EntityMeta plugin is installed and enabled.
+     *
+     * @return true if EntityMeta is available.
+     */
+    static boolean isEntityMetaInstalled() {
+        return Bukkit.getPluginManager().isPluginEnabled("EntityMeta");
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Checks the state file for serialized fights and loads them, each in its
+     * own world. A fight whose world isn't loaded is kept in the state file
+     * for a later start.
+     */
+    private void checkForExistingFights() {
+        Map<String, ConfigurationSection> savedFights = STATE.getSavedFights();
+        if (savedFights.isEmpty()) {
+            return;
+        }
+        Thread.newThread(5, () -> {
+            savedFights.forEach((worldName, savedFight) -> {
+                if (loadFight(savedFight)) {
+                    STATE.removeSavedFight(worldName);
+                }
+            });
+            STATE.save();
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Loads a serialized fight and registers it, if its world is loaded.
+     *
+     * @param savedFight the saved fight.
+     * @return true if the saved fight was used up, false if its world isn't
+     *         loaded and it should be kept.
+     */
+    private boolean loadFight(ConfigurationSection savedFight) {
+        String worldName = savedFight.getString("world-name", "world_the_end");
+        World world = Bukkit.getWorld(worldName);
+        if (world == null) {
+            log("Couldn't load the saved fight in " + worldName + ": the world isn't loaded. Keeping it for later.");
+            return false;
+        }
+        EnderDragonFight fight = new EnderDragonFight(world, savedFight);
+        if (fight.isActive()) {
+            FIGHTS.register(fight);
+        }
+        return true;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * @see JavaPlugin#onDisable().
      */
     public void onDisable() {
-        ConfigurationSection serialize = Configuration.getOrCreateSection("saved-fight");
-        if (FIGHT != null && FIGHT.getStage() != FightStage.FINISHED) {
-            FIGHT.save(serialize);
-        } else {
-            getConfig().set("saved-fight", null);
-            saveConfig();
+        LEADERBOARD.close();
+        // saved fights in worlds which never loaded are left alone
+        for (EnderDragonFight fight : FIGHTS.getAll()) {
+            STATE.removeSavedFight(fight.getWorld().getName());
+            if (fight.isActive()) {
+                fight.save(STATE.createSavedFight(fight.getWorld()));
+            }
+            fight.getRecorder().flushNow();
         }
+        STATE.saveNow();
     }
 
     // ------------------------------------------------------------------------
@@ -123,19 +328,20 @@ public class NerdyDragon extends JavaPlugin implements Listener {
      */
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onEntitySpawn(CreatureSpawnEvent e) {
-        if (!NerdyDragon.CONFIG.ENABLED || e.getLocation().getWorld() != Util.WORLD_THE_END) {
+        World world = e.getLocation().getWorld();
+        Configuration config = CONFIG;
+        if (!config.ENABLED || e.getEntityType() != EntityType.ENDER_DRAGON || !config.isFightWorld(world)) {
             return;
         }
-        if (e.getEntityType() == EntityType.ENDER_DRAGON) {
-            log("[DRAGON SPAWN] Caught EnderDragon spawn at " + Util.locationToOrderedTriple(e.getLocation()));
-            if (FIGHT != null && FIGHT.getStage() != FightStage.FINISHED) {
-                log("[DRAGON SPAWN] Fight in progress. Attempting to update the dragon without crashing and burning...");
-                FIGHT.updateDragon((EnderDragon) e.getEntity());
-                log("[DRAGON SPAWN] ... hopefully that worked.");
-                return;
-            }
-            Thread.newThread(() -> FIGHT = new EnderDragonFight((EnderDragon) e.getEntity()));
+        log("[DRAGON SPAWN] Caught EnderDragon spawn in " + world.getName() + " at " + Util.locationToOrderedTriple(e.getLocation()));
+        EnderDragonFight fight = FIGHTS.getActive(world);
+        if (fight != null) {
+            log("[DRAGON SPAWN] Fight in progress. Attempting to update the dragon without crashing and burning...");
+            fight.updateDragon((EnderDragon) e.getEntity());
+            log("[DRAGON SPAWN] ... hopefully that worked.");
+            return;
         }
+        Thread.newThread(() -> FIGHTS.register(new EnderDragonFight((EnderDragon) e.getEntity())));
     }
 
     // ------------------------------------------------------------------------
@@ -144,7 +350,8 @@ public class NerdyDragon extends JavaPlugin implements Listener {
      */
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onEntityDeath(EntityDeathEvent e) {
-        if (!NerdyDragon.CONFIG.ENABLED || e.getEntity().getWorld() != Util.WORLD_THE_END) {
+        Configuration config = CONFIG;
+        if (!config.ENABLED || !config.isFightWorld(e.getEntity().getWorld())) {
             return;
         }
         if (e.getEntityType() == EntityType.ENDER_DRAGON) {
@@ -161,7 +368,7 @@ public class NerdyDragon extends JavaPlugin implements Listener {
     public void onPlayerPlaceCrystal(PlayerInteractEvent e) {
         if (e.getMaterial() == Material.END_CRYSTAL && e.getAction() == Action.RIGHT_CLICK_BLOCK) {
             Player player = e.getPlayer();
-            if (player.getWorld() == Util.WORLD_THE_END && e.getClickedBlock().getType() == Material.BEDROCK) {
+            if (CONFIG.isFightWorld(player.getWorld()) && e.getClickedBlock().getType() == Material.BEDROCK) {
                 log(player.getName() + " placed a crystal at " + Util.locationToOrderedTriple(e.getClickedBlock().getLocation()));
             }
         }
@@ -214,6 +421,17 @@ public class NerdyDragon extends JavaPlugin implements Listener {
         log("Sent " + sender.getName() + " a message: " + message);
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Sends every online player the same message. The server echoes it to
+     * console once, so this does not log per recipient.
+     *
+     * @param message the message.
+     */
+    public static void broadcast(String message) {
+        Bukkit.broadcastMessage(PREFIX + message);
+    }
+
     /**
      * A pre-formatted log prefix for this plugin.
      */
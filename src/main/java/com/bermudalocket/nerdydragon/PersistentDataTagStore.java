@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Entity;
+import org.bukkit.persistence.PersistentDataType;
+
+// ------------------------------------------------------------------------
+/**
+ * Tags entities with a byte flag in their persistent data container, which
+ * is saved with the entity by the server itself.
+ */
+class PersistentDataTagStore implements EntityTagStore {
+
+    static final String NAME = "persistent-data";
+
+    private static final byte TAGGED = 1;
+
+    private final NamespacedKey _key = new NamespacedKey(NerdyDragon.PLUGIN, "dragon-fight");
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EntityTagStore#getName().
+     */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EntityTagStore#tag(Entity).
+     */
+    @Override
+    public void tag(Entity entity) {
+        entity.getPersistentDataContainer().set(_key, PersistentDataType.BYTE, TAGGED);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see EntityTagStore#isTagged(Entity).
+     */
+    @Override
+    public boolean isTagged(Entity entity) {
+        return entity.getPersistentDataContainer().has(_key, PersistentDataType.BYTE);
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.entity.Entity;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * Counts the dragon fireballs, breath clouds and endermites a fight has alive
+ * at once, so that the fight can stop adding more when the stage's
+ * {@link FightStage#MAX_IN_FLIGHT} is reached. Entities are tracked when they
+ * are spawned and untracked when they leave the world.
+ *
+ * Main thread only.
+ */
+public class ProjectileBudget {
+
+    /**
+     * The kinds of entity counted against the budget.
+     */
+    public enum Kind {
+        FIREBALL, CLOUD, ENDERMITE
+    }
+
+    /**
+     * The tracked entities, by UUID.
+     */
+    private final HashMap<UUID, Kind> _tracked = new HashMap<>();
+
+    /**
+     * The number of tracked entities of each kind, indexed by ordinal.
+     */
+    private final int[] _counts = new int[Kind.values().length];
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if another entity may be added in the given stage.
+     *
+     * @param stage the fight's stage.
+     * @return true if the budget has room.
+     */
+    public boolean hasRoom(FightStage stage) {
+        return _tracked.size() < stage.MAX_IN_FLIGHT;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Counts the given entity against the budget. Tracking an entity twice
+     * has no further effect.
+     *
+     * @param entity the entity.
+     * @param kind the entity's kind.
+     */
+    public void track(Entity entity, Kind kind) {
+        if (_tracked.putIfAbsent(entity.getUniqueId(), kind) == null) {
+            _counts[kind.ordinal()]++;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Stops counting the entity with the given UUID, if it is tracked.
+     *
+     * @param uuid the entity's UUID.
+     */
+    public void untrack(UUID uuid) {
+        Kind kind = _tracked.remove(uuid);
+        if (kind != null) {
+            _counts[kind.ordinal()]--;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Forgets every tracked entity.
+     */
+    public void clear() {
+        _tracked.clear();
+        for (int i = 0; i < _counts.length; i++) {
+            _counts[i] = 0;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the number of tracked entities of the given kind.
+     *
+     * @param kind the kind.
+     * @return the number of tracked entities of that kind.
+     */
+    public int getInFlight(Kind kind) {
+        return _counts[kind.ordinal()];
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.Sound;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Fireball;
+import org.bukkit.entity.Player;
+import org.bukkit.util.Vector;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * Rains fireballs down on the arena in the final stage of the fight. A rain
+ * is planned in full when it is triggered: a list of impact points, each in a
+ * loaded chunk and, once the arena's heightmap is built, over the island,
+ * with the tick it is due. Players near the portal are warned
+ * once, then the fight's tick releases the due fireballs, no more than
+ * {@link #SPAWNS_PER_TICK} at a time.
+ *
+ * Each fight has its own engine, so the cooldown between rains is per fight
+ * and measured in fight ticks. Main thread only.
+ */
+class RainFireEngine {
+
+    /**
+     * The velocity of each falling fireball.
+     */
+    private static final Vector DOWN_VECTOR = new Vector(0, -3.25, 0);
+
+    /**
+     * The height the fireballs are spawned at if the arena's heightmap hasn't
+     * been built yet.
+     */
+    private static final int SPAWN_Y = 150;
+
+    /**
+     * The height above the ground the fireballs are spawned at, and the
+     * highest y they are spawned at, once the heightmap is built.
+     */
+    private static final int DROP_HEIGHT = 80;
+
+    private static final int MAX_SPAWN_Y = 250;
+
+    /**
+     * The square radius around the portal the fireballs land in.
+     */
+    private static final int RADIUS = 40;
+
+    /**
+     * The minimum and maximum number of fireballs in one rain.
+     */
+    private static final int MIN_IMPACTS = 25;
+
+    private static final int MAX_IMPACTS = 40;
+
+    /**
+     * The number of ticks between impacts.
+     */
+    private static final int IMPACT_SPACING = 5;
+
+    /**
+     * The number of ticks between the warning and the wither's cry. The first
+     * impact follows one {@link #IMPACT_SPACING} later, as it always has.
+     */
+    private static final int WARNING_TICKS = 6;
+
+    /**
+     * The minimum number of ticks from the start of one rain to the start of
+     * the next.
+     */
+    private static final int COOLDOWN_TICKS = 25 * 20;
+
+    /**
+     * The most fireballs released in one tick, so a late tick doesn't release
+     * a backlog all at once.
+     */
+    private static final int SPAWNS_PER_TICK = 2;
+
+    /**
+     * How many times to look for a point in a loaded chunk, over the island,
+     * for each impact.
+     */
+    private static final int PLACEMENT_ATTEMPTS = 4;
+
+    /**
+     * The planned impacts: block coordinates and the tick each is due.
+     */
+    private final int[] _x = new int[MAX_IMPACTS];
+
+    private final int[] _y = new int[MAX_IMPACTS];
+
+    private final int[] _z = new int[MAX_IMPACTS];
+
+    private final long[] _fireAt = new long[MAX_IMPACTS];
+
+    /**
+     * The number of planned impacts, and the index of the next one to fire.
+     */
+    private int _planned;
+
+    private int _next;
+
+    /**
+     * The tick the current rain was triggered on, and the tick the next rain
+     * may start on.
+     */
+    private long _startedAt;
+
+    private long _readyAt;
+
+    /**
+     * The players who have been warned of the current rain.
+     */
+    private final HashSet<UUID> _warned = new HashSet<>();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Plans a rain of fire, unless one is in progress or the cooldown hasn't
+     * elapsed.
+     *
+     * @param now the fight's current tick.
+     * @param fight the fight.
+     * @return true if a rain was planned.
+     */
+    boolean trigger(long now, EnderDragonFight fight) {
+        if (isActive() || now < _readyAt) {
+            return false;
+        }
+        World world = fight.getWorld();
+        ArenaHeightmap heightmap = NerdyDragon.ARENAS.getHeightmap(world);
+        int count = MathUtil.random(MIN_IMPACTS, MAX_IMPACTS);
+        _planned = 0;
+        _next = 0;
+        for (int i = 0; i < count; i++) {
+            for (int attempt = 0; attempt < PLACEMENT_ATTEMPTS; attempt++) {
+                int x = MathUtil.random(2 * RADIUS) - RADIUS;
+                int z = MathUtil.random(2 * RADIUS) - RADIUS;
+                if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+                    continue;
+                }
+                int y = SPAWN_Y;
+                if (heightmap != null) {
+                    int ground = heightmap.getHeight(x, z);
+                    if (ground < 0) {
+                        continue;
+                    }
+                    y = Math.min(MAX_SPAWN_Y, ground + DROP_HEIGHT);
+                }
+                _x[_planned] = x;
+                _y[_planned] = y;
+                _z[_planned] = z;
+                _fireAt[_planned] = now + WARNING_TICKS + (long) (i + 1) * IMPACT_SPACING;
+                _planned++;
+                break;
+            }
+        }
+        if (_planned == 0) {
+            return false;
+        }
+        _startedAt = now;
+        _readyAt = now + COOLDOWN_TICKS;
+        _warned.clear();
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Warns any players who haven't been warned yet and releases the
+     * fireballs which are due. Called every tick by the fight.
+     *
+     * @param now the fight's current tick.
+     * @param fight the fight.
+     * @param players the players near the portal.
+     */
+    void tick(long now, EnderDragonFight fight, Collection<Player> players) {
+        if (!isActive()) {
+            return;
+        }
+        FightBroadcast broadcast = fight.getBroadcast();
+        for (Player player : players) {
+            if (_warned.add(player.getUniqueId())) {
+                broadcast.sendTitle(player, ChatColor.RED + "INCOMING ATTACK", "", 10, 60, 10);
+                broadcast.playSound(player, Sound.BLOCK_NOTE_BLOCK_PLING, 3, 1);
+            }
+        }
+        if (now == _startedAt + WARNING_TICKS) {
+            fight.playSound(Sound.ENTITY_WITHER_SPAWN, 0.7f);
+        }
+        World world = fight.getWorld();
+        int spawned = 0;
+        while (_next < _planned && _fireAt[_next] <= now && spawned < SPAWNS_PER_TICK) {
+            int x = _x[_next];
+            int y = _y[_next];
+            int z = _z[_next];
+            _next++;
+            // the chunk may have unloaded since the rain was planned
+            if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+                continue;
+            }
+            Location location = new Location(world, x, y, z);
+            Fireball fireball = (Fireball) fight.spawnReinforcement(location, EntityType.FIREBALL);
+            fireball.setYield(3f);
+            fireball.setDirection(DOWN_VECTOR);
+            spawned++;
+        }
+        if (!isActive()) {
+            _warned.clear();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Abandons the current rain, if any.
+     */
+    void clear() {
+        _planned = 0;
+        _next = 0;
+        _warned.clear();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if a rain is in progress.
+     *
+     * @return true if a rain is in progress.
+     */
+    boolean isActive() {
+        return _next < _planned;
+    }
+
+}
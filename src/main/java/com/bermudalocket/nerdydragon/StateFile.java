@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.util.BlockVector;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+// ------------------------------------------------------------------------
+/**
+ * The plugin's runtime state, kept in state.yml apart from the configuration
+ * so that reloading the configuration never touches it: the pillar locations
+ * recorded in each world, each world's scanned {@link ArenaGeometry} and the
+ * fights saved on shutdown.
+ *
+ * Main thread only. Changes are serialized on the main thread and written
+ * off it.
+ */
+public class StateFile {
+
+    /**
+     * The state file.
+     */
+    private final File _file;
+
+    /**
+     * The state, as last loaded or changed.
+     */
+    private final YamlConfiguration _yaml = new YamlConfiguration();
+
+    /**
+     * The block positions of the crystals atop the pillars, by world name.
+     */
+    private final HashMap<String, HashSet<BlockVector>> _pillars = new HashMap<>();
+
+    /**
+     * The scanned arena geometries, by world name.
+     */
+    private final HashMap<String, ArenaGeometry> _arenas = new HashMap<>();
+
+    /**
+     * The most recent serialized state not yet written, or null.
+     */
+    private final AtomicReference<String> _unwritten = new AtomicReference<>();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param file the state file.
+     */
+    StateFile(File file) {
+        _file = file;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Loads the state file, first moving any state left in the configuration
+     * file by earlier versions into it.
+     *
+     * @param configFile the configuration file.
+     */
+    void load(File configFile) {
+        if (_file.exists()) {
+            try {
+                _yaml.load(_file);
+            } catch (IOException | InvalidConfigurationException e) {
+                NerdyDragon.log("Couldn't read " + _file.getName() + ": " + e.getMessage());
+            }
+        }
+        migrate(configFile);
+        ConfigurationSection pillars = _yaml.getConfigurationSection(PILLARS_KEY);
+        if (pillars != null) {
+            for (String worldName : pillars.getKeys(false)) {
+                _pillars.put(worldName, parsePillarLocations(worldName, pillars.getStringList(worldName)));
+            }
+        }
+        ConfigurationSection arenas = _yaml.getConfigurationSection(ARENAS_KEY);
+        if (arenas != null) {
+            for (String worldName : arenas.getKeys(false)) {
+                ArenaGeometry geometry = ArenaGeometry.load(arenas.getConfigurationSection(worldName));
+                if (geometry != null) {
+                    _arenas.put(worldName, geometry);
+                } else {
+                    NerdyDragon.log("Skipping the malformed arena geometry of " + worldName + "; it will be rescanned.");
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Moves the pillar locations and saved fights which earlier versions kept
+     * in the configuration file into this file.
+     *
+     * @param configFile the configuration file.
+     */
+    private void migrate(File configFile) {
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.load(configFile);
+        } catch (IOException | InvalidConfigurationException e) {
+            return;
+        }
+        boolean migrated = false;
+        if (config.isList(LEGACY_PILLARS_KEY)) {
+            migratePillars(Configuration.DEFAULT_WORLD, config.getStringList(LEGACY_PILLARS_KEY));
+            config.set(LEGACY_PILLARS_KEY, null);
+            migrated = true;
+        }
+        ConfigurationSection worlds = config.getConfigurationSection("worlds");
+        if (worlds != null) {
+            for (String worldName : worlds.getKeys(false)) {
+                String key = worldName + "." + LEGACY_PILLARS_KEY;
+                if (worlds.isList(key)) {
+                    migratePillars(worldName, worlds.getStringList(key));
+                    worlds.set(key, null);
+                    migrated = true;
+                }
+            }
+        }
+        ConfigurationSection legacyFight = config.getConfigurationSection("saved-fight");
+        if (legacyFight != null) {
+            copy(legacyFight, SAVED_FIGHTS_KEY + "." + legacyFight.getString("world-name", Configuration.DEFAULT_WORLD));
+            config.set("saved-fight", null);
+            migrated = true;
+        }
+        ConfigurationSection savedFights = config.getConfigurationSection(SAVED_FIGHTS_KEY);
+        if (savedFights != null) {
+            copy(savedFights, SAVED_FIGHTS_KEY);
+            config.set(SAVED_FIGHTS_KEY, null);
+            migrated = true;
+        }
+        if (!migrated) {
+            return;
+        }
+        try {
+            _yaml.save(_file);
+            config.save(configFile);
+            NerdyDragon.log("Moved the pillar locations and saved fights from " + configFile.getName() + " to " + _file.getName() + ".");
+        } catch (IOException e) {
+            NerdyDragon.log("Couldn't move the state out of " + configFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Moves a world's pillar locations from the configuration file, unless
+     * this file already has some for the world.
+     *
+     * @param worldName the world's name.
+     * @param locations the locations, as "x,y,z" strings.
+     */
+    private void migratePillars(String worldName, List<String> locations) {
+        String key = PILLARS_KEY + "." + worldName;
+        if (!_yaml.isList(key) && !locations.isEmpty()) {
+            _yaml.set(key, locations);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Copies a section of another configuration into this file.
+     *
+     * @param from the section.
+     * @param path the path to copy it to.
+     */
+    private void copy(ConfigurationSection from, String path) {
+        for (String key : from.getKeys(true)) {
+            if (!from.isConfigurationSection(key)) {
+                _yaml.set(path + "." + key, from.get(key));
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parses a world's pillar locations, skipping any which are malformed.
+     *
+     * @param worldName the world's name.
+     * @param locations the locations, as "x,y,z" strings.
+     * @return the block positions.
+     */
+    private static HashSet<BlockVector> parsePillarLocations(String worldName, List<String> locations) {
+        HashSet<BlockVector> vectors = new HashSet<>();
+        for (String locString : locations) {
+            String[] parts = locString.split(",");
+            try {
+                int x = Integer.valueOf(parts[0]);
+                int y = Integer.valueOf(parts[1]);
+                int z = Integer.valueOf(parts[2]);
+                vectors.add(new BlockVector(x, y, z));
+                NerdyDragon.log("Loaded regeneration point in " + worldName + ": (" + x + ", " + y + ", " + z + ")");
+            } catch (RuntimeException e) {
+                NerdyDragon.log("Skipping invalid regeneration point in " + worldName + ": " + locString);
+            }
+        }
+        return vectors;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the recorded pillar locations in the given world.
+     *
+     * @param world the world.
+     * @return a new set of the pillar locations; empty if none are recorded.
+     */
+    HashSet<Location> getPillarLocations(World world) {
+        HashSet<Location> locations = new HashSet<>();
+        for (BlockVector vector : _pillars.getOrDefault(world.getName(), new HashSet<>())) {
+            locations.add(vector.toLocation(world));
+        }
+        return locations;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Replaces the recorded pillar locations in the given world and saves
+     * them.
+     *
+     * @param world the world.
+     * @param locations the new locations.
+     */
+    void setPillarLocations(World world, Iterable<Location> locations) {
+        HashSet<BlockVector> vectors = new HashSet<>();
+        List<String> strings = new ArrayList<>();
+        for (Location location : locations) {
+            vectors.add(new BlockVector(location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+            String coordString = location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ();
+            strings.add(coordString);
+            NerdyDragon.log("Saved regeneration point in " + world.getName() + ": (" + coordString + ")");
+        }
+        _pillars.put(world.getName(), vectors);
+        _yaml.set(PILLARS_KEY + "." + world.getName(), strings);
+        save();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the scanned geometry of the given world's arena.
+     *
+     * @param world the world.
+     * @return the geometry, or null if the world hasn't been scanned.
+     */
+    ArenaGeometry getArenaGeometry(World world) {
+        return _arenas.get(world.getName());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Replaces the geometry of the given world's arena and saves it.
+     *
+     * @param world the world.
+     * @param geometry the geometry.
+     */
+    void setArenaGeometry(World world, ArenaGeometry geometry) {
+        _arenas.put(world.getName(), geometry);
+        geometry.save(_yaml.createSection(ARENAS_KEY + "." + world.getName()));
+        save();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the saved fights.
+     *
+     * @return the saved fights' sections, by world name.
+     */
+    Map<String, ConfigurationSection> getSavedFights() {
+        Map<String, ConfigurationSection> fights = new LinkedHashMap<>();
+        ConfigurationSection section = _yaml.getConfigurationSection(SAVED_FIGHTS_KEY);
+        if (section != null) {
+            for (String worldName : section.getKeys(false)) {
+                ConfigurationSection fight = section.getConfigurationSection(worldName);
+                if (fight != null) {
+                    fights.put(worldName, fight);
+                }
+            }
+        }
+        return fights;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Creates an empty section in which to save the fight in the given world.
+     *
+     * @param world the world.
+     * @return the section.
+     */
+    ConfigurationSection createSavedFight(World world) {
+        return _yaml.createSection(SAVED_FIGHTS_KEY + "." + world.getName());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Forgets the saved fight in the given world, if any.
+     *
+     * @param worldName the world's name.
+     */
+    void removeSavedFight(String worldName) {
+        _yaml.set(SAVED_FIGHTS_KEY + "." + worldName, null);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Saves the state off the main thread. If several saves are pending, only
+     * the most recent state is written.
+     */
+    void save() {
+        _unwritten.set(_yaml.saveToString());
+        Thread.newAsyncThread(this::writePending);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Saves the state on the calling thread, for when the scheduler is no
+     * longer available (e.g. on shutdown).
+     */
+    void saveNow() {
+        _unwritten.set(_yaml.saveToString());
+        writePending();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Writes the most recent unwritten state, if any. Synchronized so that
+     * an older state can never be written after a newer one.
+     */
+    private synchronized void writePending() {
+        String data = _unwritten.getAndSet(null);
+        if (data == null) {
+            return;
+        }
+        try {
+            _file.getParentFile().mkdirs();
+            Files.write(_file.toPath(), data.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            NerdyDragon.log("Couldn't write " + _file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The key of the pillar locations, by world name.
+     */
+    private static final String PILLARS_KEY = "ender-crystal-pillar-locations";
+
+    /**
+     * The key of the arena geometries, by world name.
+     */
+    private static final String ARENAS_KEY = "arenas";
+
+    /**
+     * The key of the saved fights, by world name.
+     */
+    private static final String SAVED_FIGHTS_KEY = "saved-fights";
+
+    /**
+     * The key of the pillar location list in the configuration file, at the
+     * top level (before fights ran per world) or in a world's section.
+     */
+    private static final String LEGACY_PILLARS_KEY = "ender-crystal-pillar-locations";
+
+}
@@ -20,6 +20,17 @@ public class Thread {
         Bukkit.getScheduler().runTaskLater(NerdyDragon.PLUGIN, runnable, 1);
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Runs the given runnable off the main server thread. The runnable must
+     * not touch worlds or entities.
+     *
+     * @param runnable the runnable.
+     */
+    public static void newAsyncThread(Runnable runnable) {
+        Bukkit.getScheduler().runTaskAsynchronously(NerdyDragon.PLUGIN, runnable);
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Schedules a new thread delayed by the given number of seconds.
@@ -6,22 +6,18 @@
  */
 package com.bermudalocket.nerdydragon;
 
-import nu.nerd.entitymeta.EntityMeta;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.World;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.entity.Projectile;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.inventory.EntityEquipment;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.SkullMeta;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.UUID;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 // ------------------------------------------------------------------------
 /**
@@ -44,6 +40,35 @@ public class Util {
         return (value > 60*60*1000 ? "H'h' " : "") + "m'm' s's'";
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Parses a duration of the form "1h2m3s" (any part may be omitted) or a
+     * plain number of seconds.
+     *
+     * @param string the string to parse.
+     * @return the duration in milliseconds, or -1 if it could not be parsed.
+     */
+    public static long parseDuration(String string) {
+        Matcher matcher = DURATION_PATTERN.matcher(string.toLowerCase());
+        if (!matcher.matches() || string.isEmpty()) {
+            return -1;
+        }
+        if (matcher.group(4) != null) {
+            return Long.parseLong(matcher.group(4)) * 1000;
+        }
+        long seconds = 0;
+        if (matcher.group(1) != null) {
+            seconds += Long.parseLong(matcher.group(1)) * 60 * 60;
+        }
+        if (matcher.group(2) != null) {
+            seconds += Long.parseLong(matcher.group(2)) * 60;
+        }
+        if (matcher.group(3) != null) {
+            seconds += Long.parseLong(matcher.group(3));
+        }
+        return seconds * 1000;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Weakly compares two locations, returning true if their block (integer)
@@ -61,13 +86,16 @@ public class Util {
 
     // ------------------------------------------------------------------------
     /**
-     * Returns the head of a random admin.
+     * Returns a copy of a random pre-built admin head.
      *
-     * @return the head of a random admin.
+     * @return a copy of a random admin head, or null if none have been built.
      */
     public static ItemStack getRandomAdminHead() {
-        String randomAdmin = MathUtil.getRandomObject(ADMINS);
-        return getPlayerHead(randomAdmin);
+        List<ItemStack> heads = NerdyDragon.ADMIN_HEADS.get();
+        if (heads.isEmpty()) {
+            return null;
+        }
+        return heads.get(MathUtil.random(heads.size() - 1)).clone();
     }
 
     // ------------------------------------------------------------------------
@@ -121,22 +149,6 @@ public class Util {
         return null;
     }
 
-    // ------------------------------------------------------------------------
-    /**
-     * Returns the given player's head as an ItemStack.
-     *
-     * @param playerUUID the UUID of the player.
-     * @return the given player's head as an ItemStack.
-     */
-    public static ItemStack getPlayerHead(String playerUUID) {
-        UUID uuid = UUID.fromString(playerUUID);
-        ItemStack itemStack = new ItemStack(Material.PLAYER_HEAD);
-        SkullMeta skullMeta = (SkullMeta) itemStack.getItemMeta();
-        skullMeta.setOwningPlayer(Bukkit.getOfflinePlayer(uuid));
-        itemStack.setItemMeta(skullMeta);
-        return itemStack;
-    }
-
     // ------------------------------------------------------------------------
     /**
      * Returns true if the entity has been spawned by this fight.
@@ -148,44 +160,22 @@ public class Util {
         if (entity == null) {
             return false;
         }
-        Object meta = EntityMeta.api().get(entity, NerdyDragon.PLUGIN, METADATA_KEY);
-        return meta != null && "true".equalsIgnoreCase((String) meta);
+        return NerdyDragon.TAGS.isTagged(entity);
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Tags the given entity with this fight's UUID as metadata.
+     * Tags the given entity as spawned by this fight.
      *
      * @param entity the entity to tag.
      */
     static void tagEntityWithMetadata(Entity entity) {
-        EntityMeta.api().set(entity, NerdyDragon.PLUGIN, METADATA_KEY, "true");
-        // yes yes i know that's a string
-        // i had... issues
+        NerdyDragon.TAGS.tag(entity);
     }
 
     /**
-     * A reference to The End, used as a default-world fallback.
-     */
-    public static final World WORLD_THE_END = Bukkit.getWorld("world_the_end");
-
-    /**
-     * This plugin's EntityMeta metadata key.
-     */
-    private static final String METADATA_KEY = "dragon-fight";
-
-    /**
-     * A set of admin names from which Vex heads are randomly chosen.
+     * Matches durations accepted by {@link #parseDuration(String)}.
      */
-    private static final HashSet<String> ADMINS = new HashSet<>(Arrays.asList(
-        "1f5abb89-9f4f-4571-8599-a56ef4982840", // pez252
-        "70346d9c-14dd-472c-89aa-e2cd1e223f61", // ttsci
-        "5466a9cf-a22a-4574-b30f-aaa6aebd712e", // defiex
-        "7a9c5824-a3b5-4105-8b1c-90ae1e2acd7e", // cujobear
-        "e3675cb9-ff31-49b2-bb7c-47fbb021ec16", // flumper
-        "d908f8ff-07ed-4e8d-a8b5-e4275866812b", // kumquatmay
-        "e3501dfb-9513-47c8-9e55-965f88325ff7", // bermudalocket
-        "8a2182fb-bc2f-440f-87d0-a889c7832e78" // totemo
-    ));
+    private static final Pattern DURATION_PATTERN = Pattern.compile("(?:(\\d+)h)?(?:(\\d+)m)?(?:(\\d+)s)?|(\\d+)");
 
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.Location;
+import org.bukkit.entity.DragonFireball;
+import org.bukkit.entity.EnderDragon;
+import org.bukkit.entity.Player;
+import org.bukkit.util.Vector;
+
+// ------------------------------------------------------------------------
+/**
+ * Plans the extra fireballs the dragon fires after one of its own. Where each
+ * shot will land is predicted when the volley is planned, leading the target
+ * by its current velocity; each shot is aimed at its point from the dragon's
+ * eye as it is fired, since the dragon keeps moving. The shots are kept in
+ * preallocated buffers until the fight's tick fires them, so a volley costs
+ * no scheduler tasks and no Location or Vector copies per shot.
+ *
+ * Main thread only.
+ */
+class VolleyPlanner {
+
+    /**
+     * The most shots which can be pending at once. Further shots are dropped.
+     */
+    private static final int CAPACITY = 32;
+
+    /**
+     * The speed of each fireball, in blocks per tick.
+     */
+    private static final double SPEED = 0.75;
+
+    /**
+     * How far ahead of the dragon's eye the fireballs are aimed from, so they
+     * don't clip the dragon.
+     */
+    private static final double MUZZLE_DISTANCE = 4;
+
+    /**
+     * The tick on which each pending shot is due.
+     */
+    private final long[] _fireAt = new long[CAPACITY];
+
+    /**
+     * The predicted position of the target of each pending shot.
+     */
+    private final double[] _tx = new double[CAPACITY];
+
+    private final double[] _ty = new double[CAPACITY];
+
+    private final double[] _tz = new double[CAPACITY];
+
+    /**
+     * The number of pending shots.
+     */
+    private int _count;
+
+    /**
+     * Reused for every launch.
+     */
+    private final Vector _direction = new Vector();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Plans a volley of between 1 and {@link FightStage#MAX_EXTRA_FIREBALLS}
+     * shots at the target, one every {@link FightStage#FIREBALL_TICK_INCREMENT}
+     * ticks.
+     *
+     * @param now the fight's current tick.
+     * @param dragon the dragon.
+     * @param target the target.
+     * @param stage the fight's stage.
+     */
+    void plan(long now, EnderDragon dragon, Player target, FightStage stage) {
+        if (stage.MAX_EXTRA_FIREBALLS <= 0 || stage.FIREBALL_TICK_INCREMENT <= 0) {
+            return;
+        }
+        Location location = target.getLocation();
+        Vector velocity = target.getVelocity();
+
+        int shots = MathUtil.random(1, stage.MAX_EXTRA_FIREBALLS);
+        for (int i = 1; i <= shots && _count < CAPACITY; i++) {
+            long delay = (long) i * stage.FIREBALL_TICK_INCREMENT;
+            _fireAt[_count] = now + delay;
+            _tx[_count] = location.getX() + delay * velocity.getX();
+            _ty[_count] = location.getY() + delay * velocity.getY();
+            _tz[_count] = location.getZ() + delay * velocity.getZ();
+            _count++;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Fires the shots which are due at their predicted points from the
+     * dragon's eye as it is now, as long as the fight's projectile budget has
+     * room; shots which don't fit are dropped.
+     *
+     * @param now the fight's current tick.
+     * @param fight the fight.
+     */
+    void emit(long now, EnderDragonFight fight) {
+        if (_count == 0) {
+            return;
+        }
+        EnderDragon dragon = fight.getDragon();
+        ProjectileBudget budget = fight.getProjectileBudget();
+        Location eye = null;
+        double ox = 0, oy = 0, oz = 0;
+        int kept = 0;
+        for (int i = 0; i < _count; i++) {
+            if (_fireAt[i] > now) {
+                _fireAt[kept] = _fireAt[i];
+                _tx[kept] = _tx[i];
+                _ty[kept] = _ty[i];
+                _tz[kept] = _tz[i];
+                kept++;
+            } else if (dragon != null && !dragon.isDead() && budget.hasRoom(fight.getStage())) {
+                if (eye == null) {
+                    eye = dragon.getEyeLocation();
+                    Vector look = eye.getDirection();
+                    ox = eye.getX() + MUZZLE_DISTANCE * look.getX();
+                    oy = eye.getY() + MUZZLE_DISTANCE * look.getY();
+                    oz = eye.getZ() + MUZZLE_DISTANCE * look.getZ();
+                }
+                double dx = _tx[i] - ox;
+                double dy = _ty[i] - oy;
+                double dz = _tz[i] - oz;
+                double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                if (length == 0) {
+                    continue;
+                }
+                double scale = SPEED / length;
+                _direction.setX(dx * scale).setY(dy * scale).setZ(dz * scale);
+                DragonFireball fireball = dragon.launchProjectile(DragonFireball.class, _direction);
+                fireball.setDirection(_direction);
+                budget.track(fireball, ProjectileBudget.Kind.FIREBALL);
+            }
+        }
+        _count = kept;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Drops every pending shot.
+     */
+    void clear() {
+        _count = 0;
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+// ------------------------------------------------------------------------
+/**
+ * The configuration of one End world which hosts fights: whether fights are
+ * run there and its overrides of the global settings. Immutable; the pillar
+ * locations recorded in the world are kept in the {@link StateFile}.
+ */
+public final class WorldConfiguration {
+
+    /**
+     * The world's name.
+     */
+    final String NAME;
+
+    /**
+     * If false, dragons spawned in this world don't start fights.
+     */
+    final boolean ENABLED;
+
+    /**
+     * This world's {@link Configuration#TARGET_BY_DAMAGE}.
+     */
+    final boolean TARGET_BY_DAMAGE;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param name the world's name.
+     * @param section the world's section; may be null, for the defaults.
+     * @param targetByDamage the global {@link Configuration#TARGET_BY_DAMAGE}.
+     */
+    WorldConfiguration(String name, ConfigurationSection section, boolean targetByDamage) {
+        NAME = name;
+        ENABLED = section == null || section.getBoolean("enabled", true);
+        TARGET_BY_DAMAGE = section != null ? section.getBoolean("targeting.weight-by-damage", targetByDamage) : targetByDamage;
+    }
+
+}
@@ -8,18 +8,27 @@ package com.bermudalocket.nerdydragon.commands;
 
 import com.bermudalocket.nerdydragon.CrystalRunnable;
 import com.bermudalocket.nerdydragon.EnderDragonFight;
+import com.bermudalocket.nerdydragon.EntityTagBenchmark;
+import com.bermudalocket.nerdydragon.FightBroadcast;
 import com.bermudalocket.nerdydragon.FightStage;
 import com.bermudalocket.nerdydragon.NerdyDragon;
 import com.bermudalocket.nerdydragon.Util;
+import com.bermudalocket.nerdydragon.recorder.FightRecorder;
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.EnderCrystal;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
 
 public class FightCommand extends ExecutorBase {
 
     public FightCommand() {
-        super("nd-fight", "help", "butcher", "butcher-all", "debug", "skip", "stop");
+        super("nd-fight", "help", "bench-tags", "butcher", "butcher-all", "debug", "rescan-arena", "skip", "stop");
     }
 
     @Override
@@ -28,9 +37,18 @@ public class FightCommand extends ExecutorBase {
             return false;
         }
 
-        EnderDragonFight fight = NerdyDragon.FIGHT;
+        if (args[0].equalsIgnoreCase("bench-tags")) {
+            benchmarkTags(sender, args);
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("rescan-arena")) {
+            rescanArena(sender, args.length > 1 ? args[1] : null);
+            return true;
+        }
+
+        EnderDragonFight fight = findFight(sender, args.length > 1 ? args[1] : null);
         if (fight == null) {
-            sender.sendMessage(ChatColor.RED + "A fight does not currently exist.");
             return true;
         }
 
@@ -60,8 +78,13 @@ public class FightCommand extends ExecutorBase {
         } else if (arg.equalsIgnoreCase("debug")) {
             CrystalRunnable runnable = fight.getCrystalRunnable();
             msg(sender, "The UUID of this fight is " + fight.getUUID().toString() + ".");
+            msg(sender, "The fight is in " + fight.getWorld().getName() + ".");
             msg(sender, "The fight is in stage " + fight.getStage().toString() + ".");
             msg(sender, "Crystal runnable is " + (runnable.isRunning() ? "running" : "stopped"));
+            FightBroadcast broadcast = fight.getBroadcast();
+            msg(sender, "Broadcast: " + broadcast.getPacketsSent() + " packets sent, " + broadcast.getPacketsSaved() + " saved by merging.");
+            FightRecorder recorder = fight.getRecorder();
+            msg(sender, "Recording: " + recorder.getRecorded() + " events, " + recorder.getDropped() + " dropped, to " + recorder.getFile().getName() + ".");
             msg(sender, "There are currently " + runnable.getCrystals().size() + " crystals being tracked: ");
             int i = 1;
             for (EnderCrystal crystal : runnable.getCrystals()) {
@@ -72,4 +95,117 @@ public class FightCommand extends ExecutorBase {
         return true;
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Finds the fight a command refers to: the fight in the named world, or
+     * else the fight in the sender's world, or else the only fight. Tells
+     * the sender if there is no such fight.
+     *
+     * @param sender the sender.
+     * @param worldName the world named in the command, or null.
+     * @return the fight, or null.
+     */
+    private EnderDragonFight findFight(CommandSender sender, String worldName) {
+        if (worldName != null) {
+            World world = Bukkit.getWorld(worldName);
+            if (world == null) {
+                sender.sendMessage(ChatColor.RED + "There is no world named " + worldName + ".");
+                return null;
+            }
+            EnderDragonFight fight = NerdyDragon.FIGHTS.get(world);
+            if (fight == null) {
+                sender.sendMessage(ChatColor.RED + "A fight does not currently exist in " + worldName + ".");
+            }
+            return fight;
+        }
+        if (sender instanceof Player) {
+            EnderDragonFight fight = NerdyDragon.FIGHTS.get(((Player) sender).getWorld());
+            if (fight != null) {
+                return fight;
+            }
+        }
+        Collection<EnderDragonFight> fights = NerdyDragon.FIGHTS.getAll();
+        if (fights.size() == 1) {
+            return fights.iterator().next();
+        }
+        if (fights.isEmpty()) {
+            sender.sendMessage(ChatColor.RED + "A fight does not currently exist.");
+        } else {
+            String worlds = fights.stream().map(fight -> fight.getWorld().getName()).collect(Collectors.joining(", "));
+            sender.sendMessage(ChatColor.RED + "There are fights in " + worlds + "; name the world.");
+        }
+        return null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Times the entity tag stores at the sender's location.
+     *
+     * @param sender the sender.
+     * @param args the command arguments; args[1], if present, is the number
+     *             of lookups per store.
+     */
+    private void benchmarkTags(CommandSender sender, String[] args) {
+        if (!inGame(sender)) {
+            return;
+        }
+        int lookups = DEFAULT_BENCHMARK_LOOKUPS;
+        if (args.length > 1) {
+            try {
+                lookups = Math.max(1, Math.min(MAX_BENCHMARK_LOOKUPS, Integer.valueOf(args[1])));
+            } catch (NumberFormatException e) {
+                msg(sender, ChatColor.RED + "The number of lookups must be a whole number.");
+                return;
+            }
+        }
+        msg(sender, "Timing " + lookups + " lookups per entity tag store...");
+        for (String line : EntityTagBenchmark.run(((Player) sender).getLocation(), lookups)) {
+            msg(sender, line);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discards a world's scanned arena geometry and scans it again, e.g.
+     * after the pillars or the island have been rebuilt.
+     *
+     * @param sender the sender.
+     * @param worldName the world named in the command, or null for the
+     *                  sender's world.
+     */
+    private void rescanArena(CommandSender sender, String worldName) {
+        World world;
+        if (worldName != null) {
+            world = Bukkit.getWorld(worldName);
+            if (world == null) {
+                sender.sendMessage(ChatColor.RED + "There is no world named " + worldName + ".");
+                return;
+            }
+        } else if (sender instanceof Player) {
+            world = ((Player) sender).getWorld();
+        } else {
+            sender.sendMessage(ChatColor.RED + "Name the world to rescan.");
+            return;
+        }
+        msg(sender, "Scanning the arena in " + world.getName() + "...");
+        NerdyDragon.ARENAS.scan(world, geometry -> {
+            if (geometry == null) {
+                msg(sender, ChatColor.RED + "Couldn't find the exit portal in " + world.getName() + ".");
+            } else {
+                msg(sender, "Scanned the arena in " + world.getName() + ". Fights starting from now will use it.");
+            }
+        });
+    }
+
+    /**
+     * The default number of lookups per store for bench-tags.
+     */
+    private static final int DEFAULT_BENCHMARK_LOOKUPS = 100000;
+
+    /**
+     * The most lookups per store bench-tags will make, since the benchmark
+     * runs on the main thread.
+     */
+    private static final int MAX_BENCHMARK_LOOKUPS = 1000000;
+
 }
@@ -7,6 +7,8 @@
 package com.bermudalocket.nerdydragon.commands;
 
 import com.bermudalocket.nerdydragon.NerdyDragon;
+import com.bermudalocket.nerdydragon.Util;
+import com.bermudalocket.nerdydragon.leaderboard.FightRecord;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 
@@ -19,7 +21,7 @@ import java.util.List;
 public class LeaderboardCommand extends ExecutorBase {
 
     public LeaderboardCommand() {
-        super("nd-leaderboard", "statistics", "top", "help");
+        super("nd-leaderboard", "statistics", "top", "rank", "player", "help");
     }
 
     @Override
@@ -30,38 +32,77 @@ public class LeaderboardCommand extends ExecutorBase {
 
         if ((args.length == 1 || args.length == 2) && args[0].equalsIgnoreCase("statistics")) {
             if (args.length == 1) {
-                msg(sender, NerdyDragon.LEADERBOARD.getStatistics(null));
+                NerdyDragon.LEADERBOARD.getStatistics(null, s -> msg(sender, s));
                 return true;
             }
             if (args[1].equalsIgnoreCase("solo")) {
-                msg(sender, NerdyDragon.LEADERBOARD.getStatistics(true));
+                NerdyDragon.LEADERBOARD.getStatistics(true, s -> msg(sender, s));
             } else if (args[1].equalsIgnoreCase("group")) {
-                msg(sender, NerdyDragon.LEADERBOARD.getStatistics(false));
+                NerdyDragon.LEADERBOARD.getStatistics(false, s -> msg(sender, s));
             } else {
-                msg(sender, NerdyDragon.LEADERBOARD.getStatistics(null));
+                NerdyDragon.LEADERBOARD.getStatistics(null, s -> msg(sender, s));
             }
             return true;
         }
 
         if ((args.length == 2 || args.length == 3) && args[0].equalsIgnoreCase("top")) {
-            int n = 5;
+            int page = 1;
             try {
-                n = Integer.valueOf(args[2]);
+                page = Math.max(1, Integer.valueOf(args[2]));
             } catch (Exception e) { }
-            msg(sender, "--------------------------------------");
-            if (args[1].equalsIgnoreCase("solo")) {
-                NerdyDragon.LEADERBOARD.getTop(n, true).forEach(s -> msg(sender, s));
-            } else if (args[1].equalsIgnoreCase("group")) {
-                NerdyDragon.LEADERBOARD.getTop(n, false).forEach(s -> msg(sender, s));
+            NerdyDragon.LEADERBOARD.getTop(page, parseCategory(args[1]), lines -> {
+                msg(sender, "--------------------------------------");
+                lines.forEach(s -> msg(sender, s));
+            });
+            return true;
+        }
+
+        if (args.length == 2 && args[0].equalsIgnoreCase("player")) {
+            NerdyDragon.LEADERBOARD.getPlayerStatistics(args[1], lines -> lines.forEach(s -> msg(sender, s)));
+            return true;
+        }
+
+        if (args.length == 3 && args[0].equalsIgnoreCase("rank")) {
+            Boolean solo = parseCategory(args[1]);
+            long duration;
+            if (args[2].equalsIgnoreCase("last")) {
+                FightRecord last = NerdyDragon.LEADERBOARD.getLastFight(solo);
+                if (last == null) {
+                    msg(sender, "There are no fights matching that criteria yet.");
+                    return true;
+                }
+                duration = last.getDuration();
             } else {
-                NerdyDragon.LEADERBOARD.getTop(n, null).forEach(s -> msg(sender, s));
+                duration = Util.parseDuration(args[2]);
+                if (duration < 0) {
+                    msg(sender, "Durations look like 12m30s, 1h2m or 750 (seconds).");
+                    return true;
+                }
             }
+            NerdyDragon.LEADERBOARD.getRank(solo, duration, s -> msg(sender, s));
             return true;
         }
 
         return false;
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Parses a fight category argument: true for solo, false for group, null
+     * for anything else (all).
+     *
+     * @param arg the argument.
+     * @return the category.
+     */
+    private static Boolean parseCategory(String arg) {
+        if (arg.equalsIgnoreCase("solo")) {
+            return true;
+        } else if (arg.equalsIgnoreCase("group")) {
+            return false;
+        }
+        return null;
+    }
+
     private static final HashSet<String> STATISTICS_SUBCOMMANDS = new HashSet<>(Arrays.asList("all", "group", "solo"));
 
     @Override
@@ -74,17 +115,26 @@ public class LeaderboardCommand extends ExecutorBase {
             _subcommands.stream().filter(s -> s.startsWith(arg)).forEach(completions::add);
         } else if (args.length == 2) {
             String arg = args[0];
-            if (arg.equalsIgnoreCase("statistics") || arg.equalsIgnoreCase("top")) {
+            if (arg.equalsIgnoreCase("statistics") || arg.equalsIgnoreCase("top") || arg.equalsIgnoreCase("rank")) {
                 if ("".equals(args[1])) {
                     return new ArrayList<>(STATISTICS_SUBCOMMANDS);
                 }
                 _subcommands.stream().filter(s -> s.startsWith(args[0])).forEach(completions::add);
+            } else if (arg.equalsIgnoreCase("player")) {
+                return NerdyDragon.LEADERBOARD.completePlayerName(args[1]);
             }
         } else if (args.length == 3) {
             String arg = args[0];
             if (arg.equalsIgnoreCase("top") && STATISTICS_SUBCOMMANDS.contains(args[1])) {
                 if ("".equals(args[2])) {
-                    return Collections.singletonList("[quantity = 5]");
+                    return Collections.singletonList("[page = 1]");
+                }
+            } else if (arg.equalsIgnoreCase("rank") && STATISTICS_SUBCOMMANDS.contains(args[1])) {
+                if ("last".startsWith(args[2].toLowerCase())) {
+                    completions.add("last");
+                }
+                if ("".equals(args[2])) {
+                    completions.add("[duration, e.g. 12m30s]");
                 }
             }
         }
@@ -26,10 +26,10 @@ public class PluginStateCommand extends ExecutorBase {
             return false;
         }
         if (NerdyDragon.CONFIG.ENABLED) {
-            NerdyDragon.CONFIG.setEnabled(false);
+            NerdyDragon.setEnabled(false);
             msg(sender, "Plugin soft-disabled.");
         } else {
-            NerdyDragon.CONFIG.setEnabled(true);
+            NerdyDragon.setEnabled(true);
             msg(sender, "Plugin enabled!");
         }
         return true;
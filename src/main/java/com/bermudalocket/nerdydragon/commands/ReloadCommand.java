@@ -21,8 +21,7 @@ public class ReloadCommand extends ExecutorBase {
         if (args.length == 1 && args[0].equalsIgnoreCase("help")) {
             return false;
         }
-        NerdyDragon.CONFIG.reload();
-        NerdyDragon.message(commandSender, "NerdyDragon reloaded!");
+        NerdyDragon.reloadConfiguration(commandSender);
         return true;
     }
 
@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+import com.bermudalocket.nerdydragon.NerdyDragon;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+// ------------------------------------------------------------------------
+/**
+ * A compact, append-only binary fight history, kept in three files:
+ *
+ * fights.bin - a header, then one fixed-width row per fight: id, time
+ *              started, duration, offset into the participant table,
+ *              participant count and killer.
+ * participants.bin - a header, then one fixed-width row per participant of
+ *              each fight: UUID and damage share.
+ * names.bin - an append-only log of (UUID, name) pairs; the last pair for a
+ *              UUID wins.
+ *
+ * The tables are row-oriented and read through memory-mapped channels.
+ * Loading still decodes every row into a {@link FightRecord}, since the
+ * leaderboard's indexes are built in memory from the full history; the
+ * compact format saves parsing and file size rather than page reads. Adding
+ * a fight only appends two rows instead of rewriting the file. A row cut
+ * short by a crash is dropped on the next read or write.
+ */
+public class BinaryFightHistory implements FightHistory {
+
+    private static final int FIGHTS_MAGIC = 0x4E444648; // "NDFH"
+
+    private static final int PARTICIPANTS_MAGIC = 0x4E444650; // "NDFP"
+
+    private static final int VERSION = 1;
+
+    /**
+     * Magic number and version, as two ints.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * id (16), time started (8), duration (8), participant offset (8),
+     * participant count (4), unused (4), killer (16).
+     */
+    private static final int FIGHT_SIZE = 64;
+
+    /**
+     * UUID (16), damage share (8).
+     */
+    private static final int PARTICIPANT_SIZE = 24;
+
+    /**
+     * UUID (16) and the length of the modified UTF-8 name which follows (2).
+     */
+    private static final int NAME_ENTRY_PREFIX_SIZE = 18;
+
+    private final File _fightsFile;
+
+    private final File _participantsFile;
+
+    private final File _namesFile;
+
+    /**
+     * The history to convert from the first time this one is loaded, if this
+     * one does not exist yet; may be null.
+     */
+    private final FightHistory _source;
+
+    /**
+     * The names already in names.bin, so unchanged names aren't re-appended.
+     */
+    private final HashMap<UUID, String> _knownNames = new HashMap<>();
+
+    /**
+     * The length of the whole entries in names.bin, or -1 if it hasn't been
+     * read yet.
+     */
+    private long _namesEnd = -1;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param directory the directory holding the history files.
+     * @param source the history to convert from if this one does not exist
+     *               yet; may be null.
+     */
+    public BinaryFightHistory(File directory, FightHistory source) {
+        _fightsFile = new File(directory, "fights.bin");
+        _participantsFile = new File(directory, "participants.bin");
+        _namesFile = new File(directory, "names.bin");
+        _source = source;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if the history has been written at least once.
+     *
+     * @return true if the history exists.
+     */
+    public boolean exists() {
+        return _fightsFile.exists();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see FightHistory#load(Map).
+     *
+     * If the history doesn't exist yet and a source history was given, the
+     * source is read and converted first.
+     */
+    @Override
+    public synchronized List<FightRecord> load(Map<UUID, String> names) throws IOException {
+        if (!_fightsFile.exists()) {
+            List<FightRecord> records = new ArrayList<>();
+            if (_source != null) {
+                records = _source.load(names);
+                if (!records.isEmpty()) {
+                    NerdyDragon.log("Converting " + records.size() + " fights to the binary history format...");
+                    convert(records, names);
+                    NerdyDragon.log("Converted the fight history.");
+                }
+            }
+            return records;
+        }
+        _namesEnd = readNames(names);
+        _knownNames.putAll(names);
+        List<FightRecord> records = new ArrayList<>();
+        try (FileChannel fightChannel = FileChannel.open(_fightsFile.toPath(), StandardOpenOption.READ);
+             FileChannel participantChannel = FileChannel.open(_participantsFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer fights = map(fightChannel, FIGHTS_MAGIC);
+            MappedByteBuffer participants = map(participantChannel, PARTICIPANTS_MAGIC);
+            long fightCount = (fights.capacity() - HEADER_SIZE) / FIGHT_SIZE;
+            long participantCount = (participants.capacity() - HEADER_SIZE) / PARTICIPANT_SIZE;
+            for (int i = 0; i < fightCount; i++) {
+                int row = (int) (HEADER_SIZE + (long) i * FIGHT_SIZE);
+                long offset = fights.getLong(row + 32);
+                int count = fights.getInt(row + 40);
+                if (count <= 0 || offset < 0 || offset + count > participantCount) {
+                    continue;
+                }
+                UUID[] players = new UUID[count];
+                double[] shares = new double[count];
+                for (int j = 0; j < count; j++) {
+                    int participant = (int) (HEADER_SIZE + (offset + j) * PARTICIPANT_SIZE);
+                    players[j] = new UUID(participants.getLong(participant), participants.getLong(participant + 8));
+                    shares[j] = participants.getDouble(participant + 16);
+                }
+                records.add(new FightRecord(new UUID(fights.getLong(row), fights.getLong(row + 8)),
+                                            fights.getLong(row + 16),
+                                            fights.getLong(row + 24),
+                                            players,
+                                            shares,
+                                            toUUID(fights.getLong(row + 48), fights.getLong(row + 56))));
+            }
+        }
+        return records;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see FightHistory#append(FightRecord, Map).
+     *
+     * The participant rows are written before the fight row, so a fight is
+     * never read back without its participants.
+     */
+    @Override
+    public synchronized void append(FightRecord record, Map<UUID, String> names) throws IOException {
+        _fightsFile.getParentFile().mkdirs();
+        try (FileChannel participants = openForAppend(_participantsFile, PARTICIPANTS_MAGIC);
+             FileChannel fights = openForAppend(_fightsFile, FIGHTS_MAGIC)) {
+            long offset = truncateToRows(participants, PARTICIPANT_SIZE);
+            ByteBuffer participantRows = ByteBuffer.allocate(record.getPlayerCount() * PARTICIPANT_SIZE);
+            for (int i = 0; i < record.getPlayerCount(); i++) {
+                putParticipant(participantRows, record.getPlayer(i), record.getShare(i));
+            }
+            writeFully(participants, participantRows, HEADER_SIZE + offset * PARTICIPANT_SIZE);
+
+            long row = truncateToRows(fights, FIGHT_SIZE);
+            ByteBuffer fightRow = ByteBuffer.allocate(FIGHT_SIZE);
+            UUID killer = record.getKiller();
+            putFight(fightRow, record.getId().getMostSignificantBits(), record.getId().getLeastSignificantBits(),
+                     record.getTimeStarted(), record.getDuration(), offset, record.getPlayerCount(),
+                     killer != null ? killer.getMostSignificantBits() : 0,
+                     killer != null ? killer.getLeastSignificantBits() : 0);
+            writeFully(fights, fightRow, HEADER_SIZE + row * FIGHT_SIZE);
+        }
+        HashMap<UUID, String> changed = new HashMap<>();
+        for (int i = 0; i < record.getPlayerCount(); i++) {
+            UUID uuid = record.getPlayer(i);
+            String name = names.get(uuid);
+            if (name != null && !name.equals(_knownNames.get(uuid))) {
+                changed.put(uuid, name);
+            }
+        }
+        if (!changed.isEmpty()) {
+            writeNames(changed, true);
+            _knownNames.putAll(changed);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Writes the given fights as a fresh history, replacing any existing one.
+     * The fights are first laid out as column arrays, filled in parallel
+     * since each fight's participant offset is known up front, and then
+     * encoded in a single pass.
+     *
+     * @param records the fights.
+     * @param names the player name dictionary.
+     */
+    public synchronized void convert(List<FightRecord> records, Map<UUID, String> names) throws IOException {
+        List<FightRecord> sorted = new ArrayList<>(records);
+        sorted.sort(Comparator.comparingLong(FightRecord::getTimeStarted));
+        int fightCount = sorted.size();
+
+        long[] offsets = new long[fightCount + 1];
+        for (int i = 0; i < fightCount; i++) {
+            offsets[i + 1] = offsets[i] + sorted.get(i).getPlayerCount();
+        }
+        int participantCount = (int) offsets[fightCount];
+
+        long[] idMost = new long[fightCount];
+        long[] idLeast = new long[fightCount];
+        long[] timesStarted = new long[fightCount];
+        long[] durations = new long[fightCount];
+        int[] counts = new int[fightCount];
+        long[] killerMost = new long[fightCount];
+        long[] killerLeast = new long[fightCount];
+        long[] playerMost = new long[participantCount];
+        long[] playerLeast = new long[participantCount];
+        double[] shares = new double[participantCount];
+
+        IntStream.range(0, fightCount).parallel().forEach(i -> {
+            FightRecord record = sorted.get(i);
+            idMost[i] = record.getId().getMostSignificantBits();
+            idLeast[i] = record.getId().getLeastSignificantBits();
+            timesStarted[i] = record.getTimeStarted();
+            durations[i] = record.getDuration();
+            counts[i] = record.getPlayerCount();
+            if (record.getKiller() != null) {
+                killerMost[i] = record.getKiller().getMostSignificantBits();
+                killerLeast[i] = record.getKiller().getLeastSignificantBits();
+            }
+            for (int j = 0; j < record.getPlayerCount(); j++) {
+                int participant = (int) offsets[i] + j;
+                playerMost[participant] = record.getPlayer(j).getMostSignificantBits();
+                playerLeast[participant] = record.getPlayer(j).getLeastSignificantBits();
+                shares[participant] = record.getShare(j);
+            }
+        });
+
+        ByteBuffer fights = ByteBuffer.allocate(Math.toIntExact(HEADER_SIZE + (long) fightCount * FIGHT_SIZE));
+        fights.putInt(FIGHTS_MAGIC).putInt(VERSION);
+        for (int i = 0; i < fightCount; i++) {
+            putFight(fights, idMost[i], idLeast[i], timesStarted[i], durations[i], offsets[i], counts[i],
+                     killerMost[i], killerLeast[i]);
+        }
+        ByteBuffer participants = ByteBuffer.allocate(Math.toIntExact(HEADER_SIZE + (long) participantCount * PARTICIPANT_SIZE));
+        participants.putInt(PARTICIPANTS_MAGIC).putInt(VERSION);
+        for (int i = 0; i < participantCount; i++) {
+            participants.putLong(playerMost[i]).putLong(playerLeast[i]).putDouble(shares[i]);
+        }
+
+        _fightsFile.getParentFile().mkdirs();
+        writeNames(names, false);
+        replace(_participantsFile, participants);
+        replace(_fightsFile, fights);
+        _knownNames.clear();
+        _knownNames.putAll(names);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Maps the whole of the given channel read-only and checks its header.
+     *
+     * @param channel the channel.
+     * @param magic the expected magic number.
+     * @return the mapped buffer.
+     */
+    private static MappedByteBuffer map(FileChannel channel, int magic) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != magic || buffer.getInt(4) != VERSION) {
+            throw new IOException("Unrecognized fight history file");
+        }
+        return buffer;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Opens the given table for writing, creating it (with a header) if it is
+     * missing or empty.
+     *
+     * @param file the file.
+     * @param magic the table's magic number.
+     * @return the open channel.
+     */
+    private static FileChannel openForAppend(File file, int magic) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(magic).putInt(VERSION);
+                writeFully(channel, header, 0);
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                channel.read(header, 0);
+                if (header.getInt(0) != magic || header.getInt(4) != VERSION) {
+                    throw new IOException("Unrecognized fight history file " + file.getName());
+                }
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Drops any partially-written row from the end of a table.
+     *
+     * @param channel the table's channel.
+     * @param rowSize the width of a row.
+     * @return the number of whole rows.
+     */
+    private static long truncateToRows(FileChannel channel, int rowSize) throws IOException {
+        long rows = (channel.size() - HEADER_SIZE) / rowSize;
+        channel.truncate(HEADER_SIZE + rows * rowSize);
+        return rows;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Writes the whole of the given buffer, flipping it first, at the given
+     * position.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Replaces the given file with the contents of the buffer, via a
+     * temporary file so a crash never leaves half a table behind.
+     */
+    private static void replace(File file, ByteBuffer contents) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, contents, 0);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void putFight(ByteBuffer buffer, long idMost, long idLeast, long timeStarted, long duration,
+                                 long offset, int count, long killerMost, long killerLeast) {
+        buffer.putLong(idMost).putLong(idLeast)
+              .putLong(timeStarted).putLong(duration)
+              .putLong(offset).putInt(count).putInt(0)
+              .putLong(killerMost).putLong(killerLeast);
+    }
+
+    private static void putParticipant(ByteBuffer buffer, UUID player, double share) {
+        buffer.putLong(player.getMostSignificantBits())
+              .putLong(player.getLeastSignificantBits())
+              .putDouble(share);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the UUID with the given bits, or null if both are zero.
+     */
+    private static UUID toUUID(long most, long least) {
+        return (most == 0 && least == 0) ? null : new UUID(most, least);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Reads names.bin into the given map, stopping quietly at an entry cut
+     * short by a crash.
+     *
+     * @param names the map to fill.
+     * @return the length of the whole entries read.
+     */
+    private long readNames(Map<UUID, String> names) throws IOException {
+        if (!_namesFile.exists()) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(_namesFile.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long end = 0;
+        while (buffer.remaining() >= NAME_ENTRY_PREFIX_SIZE) {
+            UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+            int start = buffer.position();
+            int length = buffer.getShort() & 0xFFFF;
+            if (buffer.remaining() < length) {
+                break;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, start, 2 + length))) {
+                names.put(uuid, in.readUTF());
+            } catch (UTFDataFormatException e) {
+                break;
+            }
+            buffer.position(start + 2 + length);
+            end = buffer.position();
+        }
+        return end;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Writes the given names to names.bin. Before appending, any entry cut
+     * short by a crash is dropped, so the new entries stay aligned; the end
+     * of the whole entries is kept from the last read or write, so the file
+     * is only scanned if it hasn't been read yet.
+     *
+     * @param names the names.
+     * @param append true to append, false to replace the file.
+     */
+    private void writeNames(Map<UUID, String> names, boolean append) throws IOException {
+        if (append && _namesFile.exists()) {
+            if (_namesEnd < 0) {
+                _namesEnd = readNames(new HashMap<>());
+            }
+            if (_namesFile.length() > _namesEnd) {
+                try (FileChannel channel = FileChannel.open(_namesFile.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(_namesEnd);
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_namesFile, append)))) {
+            for (Map.Entry<UUID, String> entry : names.entrySet()) {
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                out.writeUTF(entry.getValue());
+            }
+        }
+        _namesEnd = _namesFile.length();
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+// ------------------------------------------------------------------------
+/**
+ * An immutable summary of the durations of a category of fights.
+ */
+public final class DurationSummary {
+
+    private final long _count;
+
+    private final double _mean;
+
+    private final double _standardDeviation;
+
+    private final double _median;
+
+    private final double _ninetiethPercentile;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param count the number of fights.
+     * @param mean the mean duration.
+     * @param standardDeviation the population standard deviation.
+     * @param median the median duration.
+     * @param ninetiethPercentile the 90th percentile duration.
+     */
+    public DurationSummary(long count, double mean, double standardDeviation, double median, double ninetiethPercentile) {
+        _count = count;
+        _mean = mean;
+        _standardDeviation = standardDeviation;
+        _median = median;
+        _ninetiethPercentile = ninetiethPercentile;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Summarizes the given running statistics.
+     *
+     * @param statistics the statistics.
+     * @return the summary.
+     */
+    static DurationSummary of(FightStatistics statistics) {
+        return new DurationSummary(statistics.getCount(),
+                                   statistics.getMean(),
+                                   statistics.getStandardDeviation(),
+                                   statistics.getQuantile(0.5),
+                                   statistics.getQuantile(0.9));
+    }
+
+    public long getCount() { return _count; }
+
+    public double getMean() { return _mean; }
+
+    public double getStandardDeviation() { return _standardDeviation; }
+
+    public double getMedian() { return _median; }
+
+    public double getNinetiethPercentile() { return _ninetiethPercentile; }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * The on-disk fight history: every finished fight, plus a dictionary of the
+ * participants' names.
+ */
+public interface FightHistory {
+
+    // ------------------------------------------------------------------------
+    /**
+     * Reads every fight in the history. May block on file i/o (and, for old
+     * files, on profile lookups), so call this off the main thread.
+     *
+     * @param names a map to fill with the player name dictionary.
+     * @return the fights, in no particular order.
+     */
+    List<FightRecord> load(Map<UUID, String> names) throws IOException;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Adds a fight to the history.
+     *
+     * @param record the fight.
+     * @param names the current names of the fight's participants.
+     */
+    void append(FightRecord record, Map<UUID, String> names) throws IOException;
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * An immutable record of a single finished fight in the fight history.
+ */
+public final class FightRecord {
+
+    private final UUID _id;
+
+    private final long _timeStarted;
+
+    private final long _duration;
+
+    private final UUID[] _players;
+
+    private final double[] _shares;
+
+    private final UUID _killer;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor. The arrays are taken as-is and must not be modified
+     * afterwards.
+     *
+     * @param id the fight UUID.
+     * @param timeStarted the time the fight began as a Unix timestamp.
+     * @param duration the duration of the fight in milliseconds.
+     * @param players the participants.
+     * @param shares each participant's normalized share of the damage.
+     * @param killer the player credited with the kill; may be null.
+     */
+    public FightRecord(UUID id, long timeStarted, long duration, UUID[] players, double[] shares, UUID killer) {
+        if (players.length != shares.length) {
+            throw new IllegalArgumentException();
+        }
+        _id = id;
+        _timeStarted = timeStarted;
+        _duration = duration;
+        _players = players;
+        _shares = shares;
+        _killer = killer;
+    }
+
+    public UUID getId() { return _id; }
+
+    public long getTimeStarted() { return _timeStarted; }
+
+    public long getDuration() { return _duration; }
+
+    public int getPlayerCount() { return _players.length; }
+
+    public UUID getPlayer(int i) { return _players[i]; }
+
+    public double getShare(int i) { return _shares[i]; }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the player credited with killing the dragon. Fights recorded
+     * before kills were tracked have no killer.
+     *
+     * @return the killer's UUID, or null.
+     */
+    public UUID getKiller() {
+        return _killer;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if this fight had exactly one participant.
+     *
+     * @return true if this fight had exactly one participant.
+     */
+    public boolean isSolo() {
+        return _players.length == 1;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if this fight belongs to the given category: true for solo,
+     * false for group, null for all.
+     *
+     * @param solo the category.
+     * @return true if this fight belongs to the given category.
+     */
+    public boolean matches(Boolean solo) {
+        if (solo == null) {
+            return _players.length >= 1;
+        }
+        return solo ? _players.length == 1 : _players.length > 1;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the more recently started of two fights. If they started at the
+     * same time, the second is returned.
+     *
+     * @param a a fight; may be null.
+     * @param b another fight; may be null.
+     * @return the more recent fight, or null if both are null.
+     */
+    public static FightRecord latest(FightRecord a, FightRecord b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return (a.getTimeStarted() > b.getTimeStarted()) ? a : b;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+import com.bermudalocket.nerdydragon.util.QuantileSketch;
+
+// ------------------------------------------------------------------------
+/**
+ * Streaming statistics over the durations of one category of fights. The
+ * mean and variance are maintained with Welford's method and the
+ * distribution with a {@link QuantileSketch}, so adding a fight is cheap and
+ * memory stays constant however long the history gets.
+ */
+public class FightStatistics {
+
+    /**
+     * The accuracy parameter of the quantile sketch; rank error is roughly
+     * 1/SKETCH_K.
+     */
+    private static final int SKETCH_K = 200;
+
+    private final QuantileSketch _sketch = new QuantileSketch(SKETCH_K);
+
+    private long _count;
+
+    private double _mean;
+
+    /**
+     * Sum of squared differences from the running mean.
+     */
+    private double _m2;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Adds a fight duration.
+     *
+     * @param duration the duration in milliseconds.
+     */
+    public void add(long duration) {
+        _count++;
+        double delta = duration - _mean;
+        _mean += delta / _count;
+        _m2 += delta * (duration - _mean);
+        _sketch.add(duration);
+    }
+
+    public long getCount() { return _count; }
+
+    public double getMean() { return _mean; }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the population standard deviation of the durations.
+     *
+     * @return the standard deviation, or 0 if there are no fights.
+     */
+    public double getStandardDeviation() {
+        return (_count == 0) ? 0 : Math.sqrt(_m2 / _count);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the approximate duration at the given quantile.
+     *
+     * @param quantile the quantile in [0, 1].
+     * @return the duration in milliseconds, or NaN if there are no fights.
+     */
+    public double getQuantile(double quantile) {
+        return _sketch.getQuantile(quantile);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the approximate fraction of fights that took at most the given
+     * duration.
+     *
+     * @param duration the duration in milliseconds.
+     * @return the fraction in [0, 1], or NaN if there are no fights.
+     */
+    public double getRank(long duration) {
+        return _sketch.getRank(duration);
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+// ------------------------------------------------------------------------
+/**
+ * A store which reads a whole {@link FightHistory} file into in-memory
+ * indexes on load and answers every query from them. Fights are appended to
+ * the file when flushed.
+ */
+public class IndexedLeaderboardStore implements LeaderboardStore {
+
+    /**
+     * The on-disk fight history.
+     */
+    private final FightHistory _history;
+
+    /**
+     * Fights added since the last flush, with their participants' names.
+     */
+    private final List<FightRecord> _unsaved = new ArrayList<>();
+
+    private final HashMap<UUID, String> _unsavedNames = new HashMap<>();
+
+    /**
+     * Duration statistics for solo, group and all fights.
+     */
+    private final FightStatistics _soloStatistics = new FightStatistics();
+
+    private final FightStatistics _groupStatistics = new FightStatistics();
+
+    private final FightStatistics _allStatistics = new FightStatistics();
+
+    /**
+     * Rankings of solo, group and all fights.
+     */
+    private final RankIndex _soloRanking = new RankIndex();
+
+    private final RankIndex _groupRanking = new RankIndex();
+
+    private final RankIndex _allRanking = new RankIndex();
+
+    /**
+     * Per-player statistics.
+     */
+    private final PlayerIndex _playerIndex = new PlayerIndex();
+
+    /**
+     * The most recently started solo and group fights, or null if there are
+     * none.
+     */
+    private FightRecord _lastSoloFight;
+
+    private FightRecord _lastGroupFight;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param history the on-disk fight history.
+     */
+    public IndexedLeaderboardStore(FightHistory history) {
+        _history = history;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#isBlocking().
+     */
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#load(Map).
+     */
+    @Override
+    public void load(Map<UUID, String> names) throws IOException {
+        List<FightRecord> records = _history.load(names);
+        _allRanking.addAll(records);
+        _soloRanking.addAll(records.stream().filter(FightRecord::isSolo).collect(Collectors.toList()));
+        _groupRanking.addAll(records.stream().filter(record -> !record.isSolo()).collect(Collectors.toList()));
+        for (FightRecord record : records) {
+            (record.isSolo() ? _soloStatistics : _groupStatistics).add(record.getDuration());
+            _allStatistics.add(record.getDuration());
+            _playerIndex.add(record);
+            updateLastFight(record);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#add(FightRecord, Map).
+     */
+    @Override
+    public void add(FightRecord record, Map<UUID, String> names) {
+        (record.isSolo() ? _soloStatistics : _groupStatistics).add(record.getDuration());
+        _allStatistics.add(record.getDuration());
+        _playerIndex.add(record);
+        (record.isSolo() ? _soloRanking : _groupRanking).add(record);
+        _allRanking.add(record);
+        updateLastFight(record);
+        _unsaved.add(record);
+        _unsavedNames.putAll(names);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#flush().
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!_unsaved.isEmpty()) {
+            _history.append(_unsaved.get(0), _unsavedNames);
+            _unsaved.remove(0);
+        }
+        _unsavedNames.clear();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#close().
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getCount(Boolean).
+     */
+    @Override
+    public long getCount(Boolean solo) {
+        return getFightStatistics(solo).getCount();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getTop(Boolean, int, int).
+     */
+    @Override
+    public List<FightRecord> getTop(Boolean solo, int offset, int limit) {
+        return getRankIndex(solo).getSlice(offset, limit);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getFractionFaster(Boolean, long).
+     *
+     * Answered approximately, from the category's quantile sketch.
+     */
+    @Override
+    public double getFractionFaster(Boolean solo, long duration) {
+        return getFightStatistics(solo).getRank(duration - 1);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getSummary(Boolean).
+     */
+    @Override
+    public DurationSummary getSummary(Boolean solo) {
+        return DurationSummary.of(getFightStatistics(solo));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getPlayerStatistics(UUID).
+     */
+    @Override
+    public PlayerStatistics getPlayerStatistics(UUID player) {
+        return _playerIndex.get(player);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getLastFight(Boolean).
+     */
+    @Override
+    public FightRecord getLastFight(Boolean solo) {
+        if (solo == null) {
+            return FightRecord.latest(_lastSoloFight, _lastGroupFight);
+        }
+        return solo ? _lastSoloFight : _lastGroupFight;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Remembers the given fight if it is the most recent of its category.
+     *
+     * @param record the fight.
+     */
+    private void updateLastFight(FightRecord record) {
+        if (record.isSolo()) {
+            _lastSoloFight = FightRecord.latest(_lastSoloFight, record);
+        } else {
+            _lastGroupFight = FightRecord.latest(_lastGroupFight, record);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the statistics for the given category.
+     *
+     * @param solo the category.
+     * @return the statistics.
+     */
+    private FightStatistics getFightStatistics(Boolean solo) {
+        if (solo == null) {
+            return _allStatistics;
+        }
+        return solo ? _soloStatistics : _groupStatistics;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the ranking for the given category.
+     *
+     * @param solo the category.
+     * @return the ranking.
+     */
+    private RankIndex getRankIndex(Boolean solo) {
+        if (solo == null) {
+            return _allRanking;
+        }
+        return solo ? _soloRanking : _groupRanking;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * Stores the fight history and answers the leaderboard's queries about it.
+ *
+ * Every category parameter follows the leaderboard's convention: true for
+ * solo fights, false for group fights, null for all fights.
+ *
+ * If {@link #isBlocking()} is true, every method other than isBlocking() and
+ * add() may touch the disk and must be called off the main thread; the store
+ * is then responsible for its own synchronization. Otherwise, everything
+ * after {@link #load(Map)} must be called on the main thread.
+ */
+public interface LeaderboardStore {
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns true if queries may block on i/o.
+     *
+     * @return true if queries may block on i/o.
+     */
+    boolean isBlocking();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Opens the store, importing older history if necessary. Always called
+     * off the main thread.
+     *
+     * @param names a map to fill with the player name dictionary.
+     */
+    void load(Map<UUID, String> names) throws IOException;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Adds a fight. Never blocks; the store may buffer the fight until the
+     * next {@link #flush()}.
+     *
+     * @param record the fight.
+     * @param names the current names of the fight's participants.
+     */
+    void add(FightRecord record, Map<UUID, String> names);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Persists any buffered fights.
+     */
+    void flush() throws IOException;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Releases any resources held by the store, flushing first.
+     */
+    void close();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the number of fights in the given category.
+     *
+     * @param solo the category.
+     * @return the number of fights.
+     */
+    long getCount(Boolean solo);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns a slice of the given category's ranking, fastest first, with
+     * ties ordered by start time and then id.
+     *
+     * @param solo the category.
+     * @param offset the number of fights to skip.
+     * @param limit the maximum number of fights to return.
+     * @return the fights.
+     */
+    List<FightRecord> getTop(Boolean solo, int offset, int limit);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the (possibly approximate) fraction of the given category's
+     * fights that were strictly faster than the given duration.
+     *
+     * @param solo the category.
+     * @param duration the duration in milliseconds.
+     * @return the fraction in [0, 1], or NaN if there are no fights.
+     */
+    double getFractionFaster(Boolean solo, long duration);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Summarizes the durations of the given category's fights.
+     *
+     * @param solo the category.
+     * @return the summary.
+     */
+    DurationSummary getSummary(Boolean solo);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the given player's statistics.
+     *
+     * @param player the player's UUID.
+     * @return the statistics, or null if the player has no fights.
+     */
+    PlayerStatistics getPlayerStatistics(UUID player);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the most recently started fight of the given category.
+     *
+     * @param solo true for solo, false for group, null for all.
+     * @return the fight, or null if there are none.
+     */
+    FightRecord getLastFight(Boolean solo);
+
+}
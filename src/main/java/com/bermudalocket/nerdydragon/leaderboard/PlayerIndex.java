@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * An incrementally-maintained index of per-player statistics, with a
+ * case-insensitive name lookup. Adding a fight costs O(participants).
+ */
+public class PlayerIndex {
+
+    private final HashMap<UUID, PlayerStatistics> _statistics = new HashMap<>();
+
+    /**
+     * Lowercased player name to UUID, sorted for prefix completion.
+     */
+    private final TreeMap<String, UUID> _uuidsByName = new TreeMap<>();
+
+    /**
+     * UUID to the player's most recently seen name.
+     */
+    private final HashMap<UUID, String> _names = new HashMap<>();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Adds a fight to the index.
+     *
+     * @param record the fight.
+     */
+    public void add(FightRecord record) {
+        for (int i = 0; i < record.getPlayerCount(); i++) {
+            UUID uuid = record.getPlayer(i);
+            _statistics.computeIfAbsent(uuid, u -> new PlayerStatistics())
+                       .add(record, record.getShare(i), uuid.equals(record.getKiller()));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Records a player's current name, replacing any previous one.
+     *
+     * @param uuid the player's UUID.
+     * @param name the player's name.
+     */
+    public void setName(UUID uuid, String name) {
+        if (name == null) {
+            return;
+        }
+        String previous = _names.put(uuid, name);
+        if (previous != null && !previous.equalsIgnoreCase(name)) {
+            _uuidsByName.remove(previous.toLowerCase(), uuid);
+        }
+        _uuidsByName.put(name.toLowerCase(), uuid);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Records many player names at once.
+     *
+     * @param names a map from UUID to name.
+     */
+    public void setNames(Map<UUID, String> names) {
+        names.forEach(this::setName);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Looks up a player by name, ignoring case.
+     *
+     * @param name the name.
+     * @return the player's UUID, or null if they are not in the index.
+     */
+    public UUID getUUID(String name) {
+        return _uuidsByName.get(name.toLowerCase());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the player's most recently seen name.
+     *
+     * @param uuid the player's UUID.
+     * @return the name, or null if unknown.
+     */
+    public String getName(UUID uuid) {
+        return _names.get(uuid);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the statistics for the given player.
+     *
+     * @param uuid the player's UUID.
+     * @return the statistics, or null if the player has no fights.
+     */
+    public PlayerStatistics get(UUID uuid) {
+        return _statistics.get(uuid);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the names of indexed players starting with the given prefix,
+     * ignoring case.
+     *
+     * @param prefix the prefix.
+     * @param limit the maximum number of names to return.
+     * @return the matching names, in alphabetical order.
+     */
+    public List<String> complete(String prefix, int limit) {
+        String lower = prefix.toLowerCase();
+        List<String> matches = new ArrayList<>();
+        for (UUID uuid : _uuidsByName.subMap(lower, lower + Character.MAX_VALUE).values()) {
+            if (matches.size() >= limit) {
+                break;
+            }
+            matches.add(_names.get(uuid));
+        }
+        return matches;
+    }
+
+}
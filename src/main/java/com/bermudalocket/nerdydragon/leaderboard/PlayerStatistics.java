@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+// ------------------------------------------------------------------------
+/**
+ * Running totals for one player across the fight history.
+ */
+public class PlayerStatistics {
+
+    private int _fights;
+
+    private int _kills;
+
+    private long _bestTime = -1;
+
+    private double _cumulativeShare;
+
+    private long _lastFight;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor for statistics which will be built up one fight at a time.
+     */
+    PlayerStatistics() {
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor for statistics which have already been totalled.
+     *
+     * @param fights the number of fights.
+     * @param kills the number of kills.
+     * @param bestTime the duration of the fastest fight.
+     * @param cumulativeShare the sum of the player's damage shares.
+     * @param lastFight the time the most recent fight began.
+     */
+    PlayerStatistics(int fights, int kills, long bestTime, double cumulativeShare, long lastFight) {
+        _fights = fights;
+        _kills = kills;
+        _bestTime = bestTime;
+        _cumulativeShare = cumulativeShare;
+        _lastFight = lastFight;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Records a fight the player took part in.
+     *
+     * @param record the fight.
+     * @param share the player's normalized share of the damage.
+     * @param killer true if the player killed the dragon.
+     */
+    void add(FightRecord record, double share, boolean killer) {
+        _fights++;
+        if (killer) {
+            _kills++;
+        }
+        if (_bestTime < 0 || record.getDuration() < _bestTime) {
+            _bestTime = record.getDuration();
+        }
+        _cumulativeShare += share;
+        _lastFight = Math.max(_lastFight, record.getTimeStarted());
+    }
+
+    public int getFights() { return _fights; }
+
+    public int getKills() { return _kills; }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the duration of the player's fastest fight.
+     *
+     * @return the duration in milliseconds, or -1 if there are no fights.
+     */
+    public long getBestTime() {
+        return _bestTime;
+    }
+
+    public double getCumulativeShare() { return _cumulativeShare; }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the player's average normalized damage share per fight.
+     *
+     * @return the average share, or 0 if there are no fights.
+     */
+    public double getAverageShare() {
+        return (_fights == 0) ? 0 : _cumulativeShare / _fights;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the time the player's most recent fight began.
+     *
+     * @return the time as a Unix timestamp.
+     */
+    public long getLastFight() {
+        return _lastFight;
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// ------------------------------------------------------------------------
+/**
+ * A precomputed ranking of fights, fastest first. Fights with the same
+ * duration are ordered by start time (earlier first) and then by id, so ties
+ * are kept rather than overwriting each other, and any page of the ranking
+ * is a direct slice.
+ */
+public class RankIndex {
+
+    /**
+     * Orders fights by duration, then start time, then id.
+     */
+    public static final Comparator<FightRecord> ORDER = Comparator.comparingLong(FightRecord::getDuration)
+                                                                  .thenComparingLong(FightRecord::getTimeStarted)
+                                                                  .thenComparing(FightRecord::getId);
+
+    private final ArrayList<FightRecord> _ranked = new ArrayList<>();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Builds a ranking from the given fights.
+     *
+     * @param records the fights.
+     */
+    public void addAll(List<FightRecord> records) {
+        _ranked.addAll(records);
+        _ranked.sort(ORDER);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Inserts a fight at its rank.
+     *
+     * @param record the fight.
+     */
+    public void add(FightRecord record) {
+        int index = Collections.binarySearch(_ranked, record, ORDER);
+        if (index >= 0) {
+            return; // already present
+        }
+        _ranked.add(-index - 1, record);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns a slice of the ranking. The slice is a read-only view and is
+     * only valid until the next fight is added.
+     *
+     * @param offset the number of fights to skip.
+     * @param limit the maximum number of fights to return.
+     * @return the fights in the slice; empty if it is out of range.
+     */
+    public List<FightRecord> getSlice(int offset, int limit) {
+        if (offset < 0 || offset >= _ranked.size()) {
+            return Collections.emptyList();
+        }
+        int to = Math.min(offset + limit, _ranked.size());
+        return Collections.unmodifiableList(_ranked.subList(offset, to));
+    }
+
+}
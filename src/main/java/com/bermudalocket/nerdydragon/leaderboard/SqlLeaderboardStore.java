@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+import com.bermudalocket.nerdydragon.NerdyDragon;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// ------------------------------------------------------------------------
+/**
+ * A store backed by an embedded SQLite database file. Rankings, ranges and
+ * per-player totals are answered by indexed queries rather than by holding
+ * the history in memory, so this scales to large shared histories.
+ *
+ * Fights are queued by {@link #add(FightRecord, Map)} without taking the
+ * connection's lock, so adding never waits on a query in progress, and are
+ * written in a single transaction by {@link #flush()}. The SQLite driver
+ * ships with the server, so there is no external service to run.
+ */
+public class SqlLeaderboardStore implements LeaderboardStore {
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS fights (" +
+            "id TEXT PRIMARY KEY, " +
+            "time_started INTEGER NOT NULL, " +
+            "duration INTEGER NOT NULL, " +
+            "solo INTEGER NOT NULL, " +
+            "killer TEXT)",
+        "CREATE TABLE IF NOT EXISTS participants (" +
+            "fight_id TEXT NOT NULL, " +
+            "player TEXT NOT NULL, " +
+            "share REAL NOT NULL, " +
+            "PRIMARY KEY (fight_id, player))",
+        "CREATE TABLE IF NOT EXISTS names (" +
+            "player TEXT PRIMARY KEY, " +
+            "name TEXT NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS fights_by_duration ON fights (duration, time_started, id)",
+        "CREATE INDEX IF NOT EXISTS fights_by_category ON fights (solo, duration, time_started, id)",
+        "CREATE INDEX IF NOT EXISTS fights_by_time ON fights (time_started)",
+        "CREATE INDEX IF NOT EXISTS participants_by_player ON participants (player)"
+    };
+
+    private static final String FIGHT_COLUMNS = "id, time_started, duration, killer";
+
+    private static final String RANKING_ORDER = " ORDER BY duration, time_started, id";
+
+    /**
+     * The database file.
+     */
+    private final File _file;
+
+    /**
+     * The history to import the first time the database is opened, if it is
+     * empty; may be null.
+     */
+    private final FightHistory _source;
+
+    private Connection _connection;
+
+    /**
+     * Fights added since the last flush, with their participants' names.
+     */
+    private final ConcurrentLinkedQueue<UnsavedFight> _unsaved = new ConcurrentLinkedQueue<>();
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param file the database file.
+     * @param source the history to import if the database is empty; may be
+     *               null.
+     */
+    public SqlLeaderboardStore(File file, FightHistory source) {
+        _file = file;
+        _source = source;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#isBlocking().
+     */
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#load(Map).
+     *
+     * Creates the schema if needed and, if the database has no fights yet,
+     * imports the source history in one transaction.
+     */
+    @Override
+    public synchronized void load(Map<UUID, String> names) throws IOException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new IOException("The SQLite driver is not available", e);
+        }
+        try {
+            _connection = DriverManager.getConnection("jdbc:sqlite:" + _file.getAbsolutePath());
+            try (Statement statement = _connection.createStatement()) {
+                for (String sql : SCHEMA) {
+                    statement.executeUpdate(sql);
+                }
+            }
+            try (Statement statement = _connection.createStatement();
+                 ResultSet results = statement.executeQuery("SELECT player, name FROM names")) {
+                while (results.next()) {
+                    UUID uuid = YamlFightHistory.parseUUID(results.getString(1));
+                    if (uuid != null) {
+                        names.put(uuid, results.getString(2));
+                    }
+                }
+            }
+            if (_source != null && getCount(null) == 0) {
+                HashMap<UUID, String> sourceNames = new HashMap<>();
+                List<FightRecord> records = _source.load(sourceNames);
+                if (!records.isEmpty()) {
+                    NerdyDragon.log("Importing " + records.size() + " fights into " + _file.getName() + "...");
+                    insert(records, sourceNames);
+                    names.putAll(sourceNames);
+                    NerdyDragon.log("Imported the fight history.");
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#add(FightRecord, Map).
+     */
+    @Override
+    public void add(FightRecord record, Map<UUID, String> names) {
+        _unsaved.add(new UnsavedFight(record, new HashMap<>(names)));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#flush().
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (_unsaved.isEmpty() || _connection == null) {
+            return;
+        }
+        List<UnsavedFight> drained = new ArrayList<>();
+        List<FightRecord> records = new ArrayList<>();
+        HashMap<UUID, String> names = new HashMap<>();
+        UnsavedFight fight;
+        while ((fight = _unsaved.poll()) != null) {
+            drained.add(fight);
+            records.add(fight._record);
+            names.putAll(fight._names);
+        }
+        try {
+            insert(records, names);
+        } catch (SQLException e) {
+            _unsaved.addAll(drained);
+            throw new IOException(e);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#close().
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (_connection != null) {
+            try {
+                _connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            _connection = null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the open connection.
+     *
+     * @return the connection.
+     * @throws SQLException if the database couldn't be opened.
+     */
+    private Connection connection() throws SQLException {
+        if (_connection == null) {
+            throw new SQLException("The leaderboard database is not open");
+        }
+        return _connection;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Writes the given fights and names in a single transaction, with each
+     * table's rows sent as one batch. Fights already in the database are
+     * skipped.
+     *
+     * @param records the fights.
+     * @param names the player name dictionary.
+     */
+    private void insert(List<FightRecord> records, Map<UUID, String> names) throws SQLException {
+        boolean autoCommit = _connection.getAutoCommit();
+        _connection.setAutoCommit(false);
+        try (PreparedStatement fights = _connection.prepareStatement(
+                 "INSERT OR IGNORE INTO fights (id, time_started, duration, solo, killer) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement participants = _connection.prepareStatement(
+                 "INSERT OR IGNORE INTO participants (fight_id, player, share) VALUES (?, ?, ?)");
+             PreparedStatement playerNames = _connection.prepareStatement(
+                 "INSERT OR REPLACE INTO names (player, name) VALUES (?, ?)")) {
+            for (FightRecord record : records) {
+                String id = record.getId().toString();
+                fights.setString(1, id);
+                fights.setLong(2, record.getTimeStarted());
+                fights.setLong(3, record.getDuration());
+                fights.setInt(4, record.isSolo() ? 1 : 0);
+                fights.setString(5, (record.getKiller() != null) ? record.getKiller().toString() : null);
+                fights.addBatch();
+                for (int i = 0; i < record.getPlayerCount(); i++) {
+                    participants.setString(1, id);
+                    participants.setString(2, record.getPlayer(i).toString());
+                    participants.setDouble(3, record.getShare(i));
+                    participants.addBatch();
+                }
+            }
+            for (Map.Entry<UUID, String> entry : names.entrySet()) {
+                if (entry.getValue() != null) {
+                    playerNames.setString(1, entry.getKey().toString());
+                    playerNames.setString(2, entry.getValue());
+                    playerNames.addBatch();
+                }
+            }
+            fights.executeBatch();
+            participants.executeBatch();
+            playerNames.executeBatch();
+            _connection.commit();
+        } catch (SQLException e) {
+            _connection.rollback();
+            throw e;
+        } finally {
+            _connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getCount(Boolean).
+     */
+    @Override
+    public synchronized long getCount(Boolean solo) {
+        try (PreparedStatement statement = connection().prepareStatement("SELECT COUNT(*) FROM fights" + where(solo));
+             ResultSet results = statement.executeQuery()) {
+            return results.next() ? results.getLong(1) : 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getTop(Boolean, int, int).
+     */
+    @Override
+    public synchronized List<FightRecord> getTop(Boolean solo, int offset, int limit) {
+        try (PreparedStatement statement = connection().prepareStatement(
+                 "SELECT " + FIGHT_COLUMNS + " FROM fights" + where(solo) + RANKING_ORDER + " LIMIT ? OFFSET ?")) {
+            statement.setInt(1, limit);
+            statement.setInt(2, offset);
+            return readFights(statement);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getFractionFaster(Boolean, long).
+     *
+     * Answered exactly, with a range count over the duration index.
+     */
+    @Override
+    public synchronized double getFractionFaster(Boolean solo, long duration) {
+        long count = getCount(solo);
+        if (count == 0) {
+            return Double.NaN;
+        }
+        String sql = "SELECT COUNT(*) FROM fights" + where(solo) + (solo == null ? " WHERE" : " AND") + " duration < ?";
+        try (PreparedStatement statement = connection().prepareStatement(sql)) {
+            statement.setLong(1, duration);
+            try (ResultSet results = statement.executeQuery()) {
+                return results.next() ? (double) results.getLong(1) / count : Double.NaN;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return Double.NaN;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getSummary(Boolean).
+     *
+     * The quantiles are exact (nearest rank), each read with a single seek
+     * into the duration index.
+     */
+    @Override
+    public synchronized DurationSummary getSummary(Boolean solo) {
+        String sql = "SELECT COUNT(*), AVG(duration), AVG(duration * duration) FROM fights" + where(solo);
+        try (PreparedStatement statement = connection().prepareStatement(sql);
+             ResultSet results = statement.executeQuery()) {
+            long count = results.next() ? results.getLong(1) : 0;
+            if (count == 0) {
+                return new DurationSummary(0, 0, 0, Double.NaN, Double.NaN);
+            }
+            double mean = results.getDouble(2);
+            double variance = Math.max(0, results.getDouble(3) - mean * mean);
+            return new DurationSummary(count, mean, Math.sqrt(variance),
+                                       getQuantile(solo, count, 0.5),
+                                       getQuantile(solo, count, 0.9));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new DurationSummary(0, 0, 0, Double.NaN, Double.NaN);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the duration at the given quantile of the given category.
+     *
+     * @param solo the category.
+     * @param count the number of fights in the category.
+     * @param quantile the quantile in [0, 1].
+     * @return the duration in milliseconds.
+     */
+    private double getQuantile(Boolean solo, long count, double quantile) throws SQLException {
+        String sql = "SELECT duration FROM fights" + where(solo) + " ORDER BY duration LIMIT 1 OFFSET ?";
+        try (PreparedStatement statement = connection().prepareStatement(sql)) {
+            statement.setLong(1, (long) Math.floor(quantile * (count - 1)));
+            try (ResultSet results = statement.executeQuery()) {
+                return results.next() ? results.getLong(1) : Double.NaN;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getPlayerStatistics(UUID).
+     */
+    @Override
+    public synchronized PlayerStatistics getPlayerStatistics(UUID player) {
+        String sql = "SELECT COUNT(*), " +
+                     "SUM(CASE WHEN f.killer = p.player THEN 1 ELSE 0 END), " +
+                     "MIN(f.duration), SUM(p.share), MAX(f.time_started) " +
+                     "FROM participants p JOIN fights f ON f.id = p.fight_id " +
+                     "WHERE p.player = ?";
+        try (PreparedStatement statement = connection().prepareStatement(sql)) {
+            statement.setString(1, player.toString());
+            try (ResultSet results = statement.executeQuery()) {
+                if (!results.next() || results.getInt(1) == 0) {
+                    return null;
+                }
+                return new PlayerStatistics(results.getInt(1),
+                                            results.getInt(2),
+                                            results.getLong(3),
+                                            results.getDouble(4),
+                                            results.getLong(5));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see LeaderboardStore#getLastFight(Boolean).
+     */
+    @Override
+    public synchronized FightRecord getLastFight(Boolean solo) {
+        try (PreparedStatement statement = connection().prepareStatement(
+                 "SELECT " + FIGHT_COLUMNS + " FROM fights" + where(solo) + " ORDER BY time_started DESC LIMIT 1")) {
+            List<FightRecord> fights = readFights(statement);
+            return fights.isEmpty() ? null : fights.get(0);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Runs a query selecting FIGHT_COLUMNS and reads the matching fights,
+     * fetching all of their participants with one more query.
+     *
+     * @param statement the prepared query.
+     * @return the fights, in the order the query returned them.
+     */
+    private List<FightRecord> readFights(PreparedStatement statement) throws SQLException {
+        LinkedHashMap<String, long[]> fights = new LinkedHashMap<>();
+        HashMap<String, String> killers = new HashMap<>();
+        try (ResultSet results = statement.executeQuery()) {
+            while (results.next()) {
+                String id = results.getString(1);
+                fights.put(id, new long[] { results.getLong(2), results.getLong(3) });
+                killers.put(id, results.getString(4));
+            }
+        }
+        if (fights.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        HashMap<String, List<UUID>> players = new HashMap<>();
+        HashMap<String, List<Double>> shares = new HashMap<>();
+        StringBuilder sql = new StringBuilder("SELECT fight_id, player, share FROM participants WHERE fight_id IN (");
+        for (int i = 0; i < fights.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        try (PreparedStatement participants = _connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (String id : fights.keySet()) {
+                participants.setString(index++, id);
+            }
+            try (ResultSet results = participants.executeQuery()) {
+                while (results.next()) {
+                    UUID player = YamlFightHistory.parseUUID(results.getString(2));
+                    if (player != null) {
+                        players.computeIfAbsent(results.getString(1), id -> new ArrayList<>()).add(player);
+                        shares.computeIfAbsent(results.getString(1), id -> new ArrayList<>()).add(results.getDouble(3));
+                    }
+                }
+            }
+        }
+
+        List<FightRecord> records = new ArrayList<>(fights.size());
+        for (Map.Entry<String, long[]> fight : fights.entrySet()) {
+            String id = fight.getKey();
+            List<UUID> fightPlayers = players.getOrDefault(id, Collections.emptyList());
+            List<Double> fightShares = shares.getOrDefault(id, Collections.emptyList());
+            records.add(new FightRecord(UUID.fromString(id),
+                                        fight.getValue()[0],
+                                        fight.getValue()[1],
+                                        fightPlayers.toArray(new UUID[0]),
+                                        fightShares.stream().mapToDouble(Double::doubleValue).toArray(),
+                                        (killers.get(id) != null) ? YamlFightHistory.parseUUID(killers.get(id)) : null));
+        }
+        return records;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the WHERE clause selecting the given category, or an empty
+     * string for all fights.
+     *
+     * @param solo the category.
+     * @return the clause.
+     */
+    private static String where(Boolean solo) {
+        if (solo == null) {
+            return "";
+        }
+        return solo ? " WHERE solo = 1" : " WHERE solo = 0";
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * A fight waiting to be written, with its participants' names.
+     */
+    private static final class UnsavedFight {
+
+        final FightRecord _record;
+
+        final Map<UUID, String> _names;
+
+        UnsavedFight(FightRecord record, Map<UUID, String> names) {
+            _record = record;
+            _names = names;
+        }
+
+    }
+
+}
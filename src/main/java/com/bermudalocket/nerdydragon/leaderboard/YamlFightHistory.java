@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.leaderboard;
+
+import com.bermudalocket.nerdydragon.NerdyDragon;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * The original fight history format: a single leaderboard.yml, read and
+ * rewritten in full.
+ */
+public class YamlFightHistory implements FightHistory {
+
+    /**
+     * The current leaderboard schema version. Version 1 keyed each fight's
+     * players by name; version 2 keys them by UUID and keeps the names in a
+     * separate "names" dictionary.
+     */
+    private static final int SCHEMA_VERSION = 2;
+
+    /**
+     * A reference to "../plugins/NerdyDragon/leaderboard.yml".
+     */
+    private final File LEADERBOARD_FILE;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param file the leaderboard file.
+     */
+    public YamlFightHistory(File file) {
+        LEADERBOARD_FILE = file;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the leaderboard file.
+     *
+     * @return the leaderboard file.
+     */
+    public File getFile() {
+        return LEADERBOARD_FILE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see FightHistory#load(Map).
+     *
+     * Migrates the file to the current schema first, if necessary.
+     */
+    @Override
+    public List<FightRecord> load(Map<UUID, String> names) {
+        List<FightRecord> records = new ArrayList<>();
+        YamlConfiguration yaml = migrate();
+        ConfigurationSection namesSection = yaml.getConfigurationSection("names");
+        if (namesSection != null) {
+            for (String key : namesSection.getKeys(false)) {
+                UUID uuid = parseUUID(key);
+                if (uuid != null) {
+                    names.put(uuid, namesSection.getString(key));
+                }
+            }
+        }
+        ConfigurationSection history = yaml.getConfigurationSection("fight-history");
+        if (history == null) {
+            return records;
+        }
+        for (String key : history.getKeys(false)) {
+            UUID fightId = parseUUID(key);
+            ConfigurationSection players = history.getConfigurationSection(key + ".players");
+            if (fightId == null || players == null) {
+                continue;
+            }
+            List<UUID> uuids = new ArrayList<>();
+            List<Double> shares = new ArrayList<>();
+            for (String player : players.getKeys(false)) {
+                UUID uuid = parseUUID(player);
+                if (uuid != null) {
+                    uuids.add(uuid);
+                    shares.add(players.getDouble(player, 0));
+                }
+            }
+            if (uuids.isEmpty()) {
+                continue;
+            }
+            records.add(new FightRecord(fightId,
+                                        getTimeStarted(fightId, yaml),
+                                        getDuration(fightId, yaml),
+                                        uuids.toArray(new UUID[0]),
+                                        shares.stream().mapToDouble(Double::doubleValue).toArray(),
+                                        parseUUID(history.getString(key + ".killer", ""))));
+        }
+        return records;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see FightHistory#append(FightRecord, Map).
+     *
+     * Note that this loads and rewrites the whole file.
+     */
+    @Override
+    public void append(FightRecord record, Map<UUID, String> names) throws IOException {
+        FileConfiguration yaml = getYAML();
+        if (!yaml.contains("fight-history")) {
+            yaml.set("schema-version", SCHEMA_VERSION);
+        }
+        ConfigurationSection section = yaml.getConfigurationSection("fight-history");
+        if (section == null) {
+            section = yaml.createSection("fight-history");
+        }
+        ConfigurationSection thisFight = section.createSection(record.getId().toString());
+        thisFight.set("time-started", record.getTimeStarted());
+        thisFight.set("duration", record.getDuration());
+        if (record.getKiller() != null) {
+            thisFight.set("killer", record.getKiller().toString());
+        }
+        ConfigurationSection players = thisFight.createSection("players");
+        for (int i = 0; i < record.getPlayerCount(); i++) {
+            UUID uuid = record.getPlayer(i);
+            players.set(uuid.toString(), record.getShare(i));
+            if (names.get(uuid) != null) {
+                yaml.set("names." + uuid.toString(), names.get(uuid));
+            }
+        }
+        yaml.save(LEADERBOARD_FILE);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Loads the leaderboard file, migrating it from version 1 (name-keyed) to
+     * the UUID-keyed schema if necessary. The original file is kept as
+     * leaderboard.v1.yml. The migrated entries are always returned, even if
+     * the backup or the migrated file couldn't be written; in that case the
+     * file is migrated again on the next load. Resolving names may block on
+     * profile lookups, so this must be run off the main thread.
+     *
+     * @return the loaded, migrated configuration.
+     */
+    private YamlConfiguration migrate() {
+        YamlConfiguration yaml = getYAML();
+        if (!LEADERBOARD_FILE.exists() || yaml.getInt("schema-version", 1) >= SCHEMA_VERSION) {
+            return yaml;
+        }
+        NerdyDragon.log("Migrating leaderboard.yml to schema version " + SCHEMA_VERSION + "...");
+        boolean backedUp;
+        try {
+            yaml.save(new File(LEADERBOARD_FILE.getParentFile(), "leaderboard.v1.yml"));
+            backedUp = true;
+        } catch (IOException e) {
+            NerdyDragon.log("Couldn't back up leaderboard.yml: " + e.getMessage() +
+                            ". Migrating in memory only; the file is left as it is.");
+            e.printStackTrace();
+            backedUp = false;
+        }
+        HashMap<String, UUID> uuidsByName = new HashMap<>();
+        ConfigurationSection history = yaml.getConfigurationSection("fight-history");
+        if (history != null) {
+            for (String fightId : history.getKeys(false)) {
+                ConfigurationSection players = history.getConfigurationSection(fightId + ".players");
+                if (players == null) {
+                    continue;
+                }
+                HashMap<String, Double> shares = new HashMap<>();
+                for (String name : players.getKeys(false)) {
+                    shares.put(name, players.getDouble(name, 0));
+                }
+                ConfigurationSection migrated = history.createSection(fightId + ".players");
+                shares.forEach((name, share) -> {
+                    UUID uuid = parseUUID(name);
+                    if (uuid == null) {
+                        uuid = uuidsByName.computeIfAbsent(name, n -> Bukkit.getOfflinePlayer(n).getUniqueId());
+                    }
+                    migrated.set(uuid.toString(), share);
+                });
+            }
+        }
+        uuidsByName.forEach((name, uuid) -> yaml.set("names." + uuid.toString(), name));
+        yaml.set("schema-version", SCHEMA_VERSION);
+        if (!backedUp) {
+            return yaml;
+        }
+        try {
+            yaml.save(LEADERBOARD_FILE);
+            NerdyDragon.log("Migrated " + uuidsByName.size() + " players in leaderboard.yml.");
+        } catch (IOException e) {
+            NerdyDragon.log("Couldn't save the migrated leaderboard.yml: " + e.getMessage() +
+                            ". Using the migration in memory only; it will be retried on the next load.");
+            e.printStackTrace();
+        }
+        return yaml;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns a freshly-loaded YamlConfiguration instance.
+     *
+     * @return a freshly-loaded YamlConfiguration instance.
+     */
+    private YamlConfiguration getYAML() {
+        return YamlConfiguration.loadConfiguration(LEADERBOARD_FILE);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parses a UUID, returning null instead of throwing if it is malformed.
+     *
+     * @param string the string.
+     * @return the UUID, or null.
+     */
+    static UUID parseUUID(String string) {
+        try {
+            return UUID.fromString(string);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the YAML parent key for the given fight UUID, of the form
+     * "fight-history.[UUID]".
+     *
+     * @param fightId
+     * @return
+     */
+    private static String getKey(UUID fightId) {
+        return "fight-history." + fightId.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the time the fight began as a Unix timestamp.
+     *
+     * @param fightId the fight UUID.
+     * @param yaml the YAML instance.
+     * @return the time the fight began as a Unix timestamp.
+     */
+    private long getTimeStarted(UUID fightId, FileConfiguration yaml) {
+        return yaml.getLong(getKey(fightId) + ".time-started", 0);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the duration of the fight in milliseconds.
+     *
+     * @param fightId the fight UUID.
+     * @param yaml the YAML instance.
+     * @return the duration of the fight in milliseconds.
+     */
+    private long getDuration(UUID fightId, FileConfiguration yaml) {
+        return yaml.getLong(getKey(fightId) + ".duration", 0);
+    }
+
+}
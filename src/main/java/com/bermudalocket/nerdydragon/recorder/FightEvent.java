@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.recorder;
+
+// ------------------------------------------------------------------------
+/**
+ * The kinds of event a {@link FightRecorder} records. Each kind has a fixed
+ * id which is written to the recording, so kinds may be added or reordered
+ * without breaking old recordings. Each record carries a short code, a float
+ * value and either a UUID or a 16-character label; what they mean depends on
+ * the kind.
+ *
+ * No Bukkit types, so the offline {@link TimelineTool} can read recordings.
+ */
+public enum FightEvent {
+
+    /**
+     * The dragon took damage. Code: a {@code DAMAGE_*} constant; value: the
+     * damage; UUID: the player credited, or none.
+     */
+    DAMAGE(1, true),
+
+    /**
+     * The dragon changed phase. Code: 1 if the change was cancelled; label:
+     * the new phase.
+     */
+    PHASE(2, false),
+
+    /**
+     * The fight changed stage. Code: the stage's ordinal; label: the stage.
+     */
+    STAGE(3, false),
+
+    /**
+     * A reinforcement was spawned. Label: its entity type.
+     */
+    SPAWN(4, false),
+
+    /**
+     * A crystal was destroyed or removed. Code: the crystals left; UUID: the
+     * player who destroyed it, or none.
+     */
+    CRYSTAL_DEATH(5, true),
+
+    /**
+     * The fight's tick or a sync task ran too long. Value: the time taken,
+     * in milliseconds; label: the tick or the task's class.
+     */
+    TASK_OVERRUN(6, false),
+
+    /**
+     * The fight started following a new dragon. UUID: the new dragon.
+     */
+    DRAGON_SWITCH(7, true),
+
+    /**
+     * The dragon died and its loot was awarded. Code: the number of stacks;
+     * value: the recipient's damage share; UUID: the recipient, or none if
+     * the loot was dropped.
+     */
+    LOOT(8, true),
+
+    /**
+     * The fight ended. Code: 1 if the end was forced.
+     */
+    FIGHT_END(9, false),
+
+    /**
+     * Events were dropped because the buffer was full. Value: how many.
+     */
+    DROPPED(10, false);
+
+    /**
+     * The id written to the recording.
+     */
+    public final int ID;
+
+    /**
+     * True if the record carries a UUID rather than a label.
+     */
+    public final boolean HAS_UUID;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param id the id written to the recording.
+     * @param hasUUID true if the record carries a UUID rather than a label.
+     */
+    FightEvent(int id, boolean hasUUID) {
+        ID = id;
+        HAS_UUID = hasUUID;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the kind with the given id.
+     *
+     * @param id the id.
+     * @return the kind, or null if the id is unknown.
+     */
+    public static FightEvent byId(int id) {
+        for (FightEvent event : values()) {
+            if (event.ID == id) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@link #DAMAGE} code: dealt by a player directly.
+     */
+    public static final int DAMAGE_MELEE = 0;
+
+    /**
+     * {@link #DAMAGE} code: dealt by a projectile a player shot.
+     */
+    public static final int DAMAGE_PROJECTILE = 1;
+
+    /**
+     * {@link #DAMAGE} code: dealt by anything else.
+     */
+    public static final int DAMAGE_OTHER = 2;
+
+}
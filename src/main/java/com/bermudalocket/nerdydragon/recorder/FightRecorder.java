@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.recorder;
+
+import com.bermudalocket.nerdydragon.NerdyDragon;
+import com.bermudalocket.nerdydragon.Thread;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// ------------------------------------------------------------------------
+/**
+ * Records a fight's timeline to a per-fight file, in the format read by
+ * {@link FightRecording}. Events are written as fixed-size records into a
+ * ring buffer allocated up front, so recording an event in a hot handler is
+ * a handful of array stores and never allocates or blocks. The buffer is
+ * drained to the file off the main thread every few seconds, or sooner when
+ * it is half full. If it fills anyway, events are dropped and the number
+ * dropped is recorded once there is room again.
+ *
+ * Events must be recorded on the main thread; the buffer is drained by at
+ * most one other thread at a time.
+ */
+public class FightRecorder {
+
+    /**
+     * The file the recording is appended to.
+     */
+    private final File _file;
+
+    /**
+     * The fight's UUID, written to the file's header.
+     */
+    private final UUID _fightId;
+
+    /**
+     * The time the fight started, as a Unix timestamp. Records are stamped
+     * relative to it.
+     */
+    private final long _timeStarted;
+
+    /**
+     * The ring buffer, {@link #RECORD_LONGS} longs per record.
+     */
+    private final long[] _ring = new long[CAPACITY * RECORD_LONGS];
+
+    /**
+     * The number of records ever written into the ring. Written by the main
+     * thread only.
+     */
+    private volatile long _head;
+
+    /**
+     * The number of records ever drained from the ring. Written by the
+     * draining thread only.
+     */
+    private volatile long _tail;
+
+    /**
+     * True if a drain has been scheduled but hasn't started.
+     */
+    private final AtomicBoolean _drainScheduled = new AtomicBoolean();
+
+    /**
+     * The fight's current tick, stamped on each record.
+     */
+    private long _tick;
+
+    /**
+     * The events dropped since the last {@link FightEvent#DROPPED} record.
+     */
+    private int _pendingDropped;
+
+    /**
+     * The events dropped in total.
+     */
+    private long _dropped;
+
+    /**
+     * True once a write has failed, so the failure is only logged once.
+     */
+    private boolean _writeFailed;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param directory the directory holding the recordings.
+     * @param fightId the fight's UUID; the file is named after it, so a
+     *                resumed fight appends to its earlier recording.
+     * @param timeStarted the time the fight started, as a Unix timestamp.
+     */
+    public FightRecorder(File directory, UUID fightId, long timeStarted) {
+        _file = new File(directory, fightId + FightRecording.EXTENSION);
+        _fightId = fightId;
+        _timeStarted = timeStarted;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Advances the tick stamped on records and, periodically or when the
+     * buffer is half full, drains it off the main thread. Call once per fight
+     * tick.
+     *
+     * @param tick the fight's tick.
+     */
+    public void tick(long tick) {
+        _tick = tick;
+        if (tick % DRAIN_PERIOD == 0 || _head - _tail >= CAPACITY / 2) {
+            flush();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Records an event carrying a UUID.
+     *
+     * @param event the kind of event.
+     * @param code the event's code.
+     * @param value the event's value.
+     * @param uuid the UUID; may be null.
+     */
+    public void record(FightEvent event, int code, float value, UUID uuid) {
+        if (uuid != null) {
+            put(event, code, value, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        } else {
+            put(event, code, value, 0, 0);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Records an event carrying a label. Only the first 16 characters of the
+     * label are kept, and any character outside ASCII becomes '?'.
+     *
+     * @param event the kind of event.
+     * @param code the event's code.
+     * @param value the event's value.
+     * @param label the label.
+     */
+    public void record(FightEvent event, int code, float value, String label) {
+        put(event, code, value, packLabel(label, 0), packLabel(label, 8));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Records a {@link FightEvent#TASK_OVERRUN} if more than
+     * {@link #OVERRUN_NANOS} have passed since the given time.
+     *
+     * @param label the tick or task which ran.
+     * @param startNanos the {@link System#nanoTime()} at which it started.
+     */
+    public void recordIfOverrun(String label, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        if (elapsed >= OVERRUN_NANOS) {
+            record(FightEvent.TASK_OVERRUN, 0, elapsed / 1.0e6f, label);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Records a {@link FightEvent#TASK_OVERRUN}, labelled with the task's
+     * class name, if more than {@link #OVERRUN_NANOS} have passed since the
+     * given time.
+     *
+     * @param task the class of the task which ran.
+     * @param startNanos the {@link System#nanoTime()} at which it started.
+     */
+    public void recordIfOverrun(Class<?> task, long startNanos) {
+        if (System.nanoTime() - startNanos >= OVERRUN_NANOS) {
+            recordIfOverrun(task.getSimpleName(), startNanos);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Writes a record into the ring, or drops it if the ring is full.
+     *
+     * @param event the kind of event.
+     * @param code the event's code.
+     * @param value the event's value.
+     * @param first the first long of the UUID or label.
+     * @param second the second long of the UUID or label.
+     */
+    private void put(FightEvent event, int code, float value, long first, long second) {
+        long head = _head;
+        long free = CAPACITY - (head - _tail);
+        if (free < (_pendingDropped > 0 ? 2 : 1)) {
+            _pendingDropped++;
+            _dropped++;
+            return;
+        }
+        if (_pendingDropped > 0) {
+            write(head++, FightEvent.DROPPED, 0, _pendingDropped, 0, 0);
+            _pendingDropped = 0;
+        }
+        write(head, event, code, value, first, second);
+        _head = head + 1;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Fills a slot of the ring. The record isn't visible to the draining
+     * thread until {@link #_head} is advanced past it.
+     *
+     * @param sequence the record's sequence number.
+     * @param event the kind of event.
+     * @param code the event's code.
+     * @param value the event's value.
+     * @param first the first long of the UUID or label.
+     * @param second the second long of the UUID or label.
+     */
+    private void write(long sequence, FightEvent event, int code, float value, long first, long second) {
+        int i = (int) (sequence & (CAPACITY - 1)) * RECORD_LONGS;
+        long elapsed = System.currentTimeMillis() - _timeStarted;
+        _ring[i] = (elapsed << 32) | (_tick & 0xFFFFFFFFL);
+        _ring[i + 1] = ((long) event.ID << 48) | ((code & 0xFFFFL) << 32) | (Float.floatToRawIntBits(value) & 0xFFFFFFFFL);
+        _ring[i + 2] = first;
+        _ring[i + 3] = second;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Drains the buffer to the file off the main thread, unless a drain is
+     * already waiting to run.
+     */
+    public void flush() {
+        if (_head != _tail && _drainScheduled.compareAndSet(false, true)) {
+            Thread.newAsyncThread(() -> {
+                _drainScheduled.set(false);
+                drain();
+            });
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Drains the buffer to the file on the calling thread, for when the
+     * scheduler is no longer available (e.g. on shutdown).
+     */
+    public void flushNow() {
+        drain();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Copies the records in the ring out and appends them to the file,
+     * writing the header first if the file is new. A record cut short by a
+     * crash is overwritten. Synchronized so that only one thread drains at a
+     * time.
+     */
+    private synchronized void drain() {
+        long tail = _tail;
+        long head = _head;
+        if (head == tail) {
+            return;
+        }
+        ByteBuffer records = ByteBuffer.allocate((int) (head - tail) * FightRecording.RECORD_SIZE);
+        for (long sequence = tail; sequence < head; sequence++) {
+            int i = (int) (sequence & (CAPACITY - 1)) * RECORD_LONGS;
+            records.putLong(_ring[i]);
+            records.putLong(_ring[i + 1]);
+            records.putLong(_ring[i + 2]);
+            records.putLong(_ring[i + 3]);
+        }
+        _tail = head;
+        records.flip();
+
+        _file.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(_file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long position;
+            if (size < FightRecording.HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(FightRecording.HEADER_SIZE);
+                header.putInt(FightRecording.MAGIC);
+                header.putInt(FightRecording.VERSION);
+                header.putLong(_timeStarted);
+                header.putLong(_fightId.getMostSignificantBits());
+                header.putLong(_fightId.getLeastSignificantBits());
+                header.flip();
+                channel.truncate(0);
+                writeFully(channel, header, 0);
+                position = FightRecording.HEADER_SIZE;
+            } else {
+                long rows = (size - FightRecording.HEADER_SIZE) / FightRecording.RECORD_SIZE;
+                position = FightRecording.HEADER_SIZE + rows * FightRecording.RECORD_SIZE;
+                channel.truncate(position);
+            }
+            writeFully(channel, records, position);
+        } catch (IOException e) {
+            if (!_writeFailed) {
+                _writeFailed = true;
+                NerdyDragon.log("Couldn't write the fight recording " + _file.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Writes all of a buffer at the given position.
+     *
+     * @param channel the channel.
+     * @param buffer the buffer.
+     * @param position the position.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Packs eight characters of a label into a long, one byte each, padding
+     * with zeroes.
+     *
+     * @param label the label.
+     * @param from the index of the first character.
+     * @return the packed characters.
+     */
+    private static long packLabel(String label, int from) {
+        long packed = 0;
+        for (int i = from; i < from + 8; i++) {
+            int c = (i < label.length()) ? label.charAt(i) : 0;
+            packed = (packed << 8) | (c < 0x80 ? c : '?');
+        }
+        return packed;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the file the recording is appended to.
+     *
+     * @return the file.
+     */
+    public File getFile() {
+        return _file;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the number of records written into the buffer, including those
+     * noting dropped events. Main thread only.
+     *
+     * @return the number of records.
+     */
+    public long getRecorded() {
+        return _head;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the number of events dropped because the buffer was full. Main
+     * thread only.
+     *
+     * @return the number of dropped events.
+     */
+    public long getDropped() {
+        return _dropped;
+    }
+
+    /**
+     * The number of records the ring holds; a power of two.
+     */
+    private static final int CAPACITY = 4096;
+
+    /**
+     * The longs per record: time and tick, kind/code/value, and two longs of
+     * UUID or label.
+     */
+    private static final int RECORD_LONGS = FightRecording.RECORD_SIZE / 8;
+
+    /**
+     * The ticks between drains.
+     */
+    private static final int DRAIN_PERIOD = 100;
+
+    /**
+     * How long a tick or task may run before it is recorded as an overrun.
+     */
+    private static final long OVERRUN_NANOS = 5_000_000;
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * A fight's recorded timeline, read back from the file written by a
+ * {@link FightRecorder}:
+ *
+ * header - magic number (4), version (4), time started (8), fight id (16).
+ * records - one fixed-width row per event: milliseconds since the start (4),
+ *           fight tick (4), event id (2), code (2), value as a float (4),
+ *           and a UUID or a label of up to 16 ASCII characters (16).
+ *
+ * A fight resumed after a restart appends to the same file, so its ticks
+ * start again from zero part way through. A row cut short by a crash is
+ * ignored.
+ */
+public final class FightRecording {
+
+    private final UUID _fightId;
+
+    private final long _timeStarted;
+
+    private final List<Entry> _entries;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param fightId the fight's UUID.
+     * @param timeStarted the time the fight started, as a Unix timestamp.
+     * @param entries the events, in the order recorded.
+     */
+    private FightRecording(UUID fightId, long timeStarted, List<Entry> entries) {
+        _fightId = fightId;
+        _timeStarted = timeStarted;
+        _entries = Collections.unmodifiableList(entries);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Reads a recording.
+     *
+     * @param file the file.
+     * @return the recording.
+     * @throws IOException if the file can't be read or isn't a recording.
+     */
+    public static FightRecording read(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException(file.getName() + " is not a fight recording");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(file.getName() + " has unsupported version " + version);
+        }
+        long timeStarted = buffer.getLong();
+        UUID fightId = new UUID(buffer.getLong(), buffer.getLong());
+        List<Entry> entries = new ArrayList<>();
+        while (buffer.remaining() >= RECORD_SIZE) {
+            int millis = buffer.getInt();
+            int tick = buffer.getInt();
+            int id = buffer.getShort() & 0xFFFF;
+            short code = buffer.getShort();
+            float value = buffer.getFloat();
+            long first = buffer.getLong();
+            long second = buffer.getLong();
+            entries.add(new Entry(millis, tick & 0xFFFFFFFFL, FightEvent.byId(id), code, value, first, second));
+        }
+        return new FightRecording(fightId, timeStarted, entries);
+    }
+
+    public UUID getFightId() { return _fightId; }
+
+    public long getTimeStarted() { return _timeStarted; }
+
+    public List<Entry> getEntries() { return _entries; }
+
+    // ------------------------------------------------------------------------
+    /**
+     * A single recorded event.
+     */
+    public static final class Entry {
+
+        private final int _millis;
+
+        private final long _tick;
+
+        private final FightEvent _event;
+
+        private final int _code;
+
+        private final float _value;
+
+        private final long _first;
+
+        private final long _second;
+
+        // ------------------------------------------------------------------------
+        /**
+         * Constructor.
+         *
+         * @param millis the milliseconds since the fight started.
+         * @param tick the fight's tick.
+         * @param event the kind of event, or null if written by a newer
+         *              version.
+         * @param code the code.
+         * @param value the value.
+         * @param first the first long of the UUID or label.
+         * @param second the second long of the UUID or label.
+         */
+        private Entry(int millis, long tick, FightEvent event, int code, float value, long first, long second) {
+            _millis = millis;
+            _tick = tick;
+            _event = event;
+            _code = code;
+            _value = value;
+            _first = first;
+            _second = second;
+        }
+
+        public int getMillis() { return _millis; }
+
+        public long getTick() { return _tick; }
+
+        public FightEvent getEvent() { return _event; }
+
+        public int getCode() { return _code; }
+
+        public float getValue() { return _value; }
+
+        // ------------------------------------------------------------------------
+        /**
+         * Returns the UUID the event carries.
+         *
+         * @return the UUID, or null if it carries none or carries a label.
+         */
+        public UUID getUUID() {
+            if (_event == null || !_event.HAS_UUID || (_first == 0 && _second == 0)) {
+                return null;
+            }
+            return new UUID(_first, _second);
+        }
+
+        // ------------------------------------------------------------------------
+        /**
+         * Returns the label the event carries.
+         *
+         * @return the label, or null if it carries a UUID.
+         */
+        public String getLabel() {
+            if (_event == null || _event.HAS_UUID) {
+                return null;
+            }
+            StringBuilder label = new StringBuilder(16);
+            unpackLabel(label, _first);
+            unpackLabel(label, _second);
+            return label.toString();
+        }
+
+        // ------------------------------------------------------------------------
+        /**
+         * Appends the characters packed into a long, stopping at the padding.
+         *
+         * @param label the label being built.
+         * @param packed the packed characters.
+         */
+        private static void unpackLabel(StringBuilder label, long packed) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                char c = (char) ((packed >>> shift) & 0xFF);
+                if (c == 0) {
+                    return;
+                }
+                label.append(c);
+            }
+        }
+
+    }
+
+    /**
+     * The extension of recording files.
+     */
+    static final String EXTENSION = ".bin";
+
+    static final int MAGIC = 0x4E444652; // "NDFR"
+
+    static final int VERSION = 1;
+
+    /**
+     * Magic number (4), version (4), time started (8), fight id (16).
+     */
+    static final int HEADER_SIZE = 32;
+
+    /**
+     * Time and tick (8), event id, code and value (8), UUID or label (16).
+     */
+    static final int RECORD_SIZE = 32;
+
+}
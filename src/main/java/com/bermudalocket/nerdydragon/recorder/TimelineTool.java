@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.recorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+// ------------------------------------------------------------------------
+/**
+ * Prints a fight recording offline, without a server:
+ *
+ *     java -cp NerdyDragon.jar com.bermudalocket.nerdydragon.recorder.TimelineTool
+ *          plugins/NerdyDragon/recordings/(fight id).bin [timeline|damage]
+ *
+ * "timeline" (the default) prints every event in order; "damage" prints the
+ * damage dealt to the dragon in each second of the fight, in total and by
+ * player.
+ */
+public class TimelineTool {
+
+    // ------------------------------------------------------------------------
+    /**
+     * Entry point.
+     *
+     * @param args the recording file and, optionally, the report to print.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: TimelineTool <recording> [timeline|damage]");
+            System.exit(2);
+        }
+        FightRecording recording;
+        try {
+            recording = FightRecording.read(new File(args[0]));
+        } catch (IOException e) {
+            System.err.println("Couldn't read " + args[0] + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        String report = (args.length == 2) ? args[1] : "timeline";
+        if (report.equalsIgnoreCase("timeline")) {
+            printTimeline(recording, System.out);
+        } else if (report.equalsIgnoreCase("damage")) {
+            printDamage(recording, System.out);
+        } else {
+            System.err.println("Unknown report: " + report);
+            System.exit(2);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Prints every event in order.
+     *
+     * @param recording the recording.
+     * @param out the stream to print to.
+     */
+    static void printTimeline(FightRecording recording, PrintStream out) {
+        printHeader(recording, out);
+        for (FightRecording.Entry entry : recording.getEntries()) {
+            out.printf("%s  %8d  %-14s %s%n", formatTime(entry.getMillis()), entry.getTick(),
+                       (entry.getEvent() != null) ? entry.getEvent() : "?", describe(entry));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Prints the damage dealt in each second with any damage, in total and by
+     * player. Damage not credited to a player is listed as "other".
+     *
+     * @param recording the recording.
+     * @param out the stream to print to.
+     */
+    static void printDamage(FightRecording recording, PrintStream out) {
+        printHeader(recording, out);
+        TreeMap<Integer, Map<String, Double>> seconds = new TreeMap<>();
+        Map<String, Double> totals = new LinkedHashMap<>();
+        for (FightRecording.Entry entry : recording.getEntries()) {
+            if (entry.getEvent() != FightEvent.DAMAGE) {
+                continue;
+            }
+            UUID player = entry.getUUID();
+            String key = (player != null) ? player.toString() : "other";
+            seconds.computeIfAbsent(entry.getMillis() / 1000, second -> new LinkedHashMap<>())
+                   .merge(key, (double) entry.getValue(), Double::sum);
+            totals.merge(key, (double) entry.getValue(), Double::sum);
+        }
+        for (Map.Entry<Integer, Map<String, Double>> second : seconds.entrySet()) {
+            double sum = second.getValue().values().stream().mapToDouble(Double::doubleValue).sum();
+            out.printf("%s  %8.2f%n", formatTime(second.getKey() * 1000), sum);
+            second.getValue().forEach((key, damage) -> out.printf("           %8.2f  %s%n", damage, key));
+        }
+        out.println("Totals:");
+        totals.forEach((key, damage) -> out.printf("           %8.2f  %s%n", damage, key));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Prints the fight's id and start time.
+     *
+     * @param recording the recording.
+     * @param out the stream to print to.
+     */
+    private static void printHeader(FightRecording recording, PrintStream out) {
+        out.println("Fight " + recording.getFightId() + ", started " + new Date(recording.getTimeStarted()) +
+                    ", " + recording.getEntries().size() + " events");
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Describes an event's code, value and UUID or label.
+     *
+     * @param entry the event.
+     * @return the description.
+     */
+    private static String describe(FightRecording.Entry entry) {
+        if (entry.getEvent() == null) {
+            return "code " + entry.getCode() + ", value " + entry.getValue();
+        }
+        UUID uuid = entry.getUUID();
+        String who = (uuid != null) ? uuid.toString() : "nobody";
+        switch (entry.getEvent()) {
+            case DAMAGE:
+                String source = (entry.getCode() == FightEvent.DAMAGE_MELEE) ? "melee"
+                              : (entry.getCode() == FightEvent.DAMAGE_PROJECTILE) ? "projectile" : "other";
+                return String.format("%.2f (%s) by %s", entry.getValue(), source, who);
+            case PHASE:
+                return entry.getLabel() + ((entry.getCode() != 0) ? " (cancelled)" : "");
+            case STAGE:
+            case SPAWN:
+                return entry.getLabel();
+            case CRYSTAL_DEATH:
+                return "by " + who + ", " + entry.getCode() + " left";
+            case TASK_OVERRUN:
+                return String.format("%s took %.2f ms", entry.getLabel(), entry.getValue());
+            case DRAGON_SWITCH:
+                return "new dragon " + who;
+            case LOOT:
+                return String.format("%d stacks to %s (%.2f%% share)", entry.getCode(), who, 100 * entry.getValue());
+            case FIGHT_END:
+                return (entry.getCode() != 0) ? "forced" : "";
+            case DROPPED:
+                return (int) entry.getValue() + " events dropped";
+            default:
+                return "";
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Formats a time since the start of the fight as mm:ss.SSS.
+     *
+     * @param millis the milliseconds.
+     * @return the formatted time.
+     */
+    private static String formatTime(long millis) {
+        return String.format("%02d:%02d.%03d", millis / 60000, (millis / 1000) % 60, millis % 1000);
+    }
+
+}
@@ -8,7 +8,6 @@ package com.bermudalocket.nerdydragon.tasks;
 
 import com.bermudalocket.nerdydragon.DragonHelper;
 import com.bermudalocket.nerdydragon.EnderDragonFight;
-import com.bermudalocket.nerdydragon.Util;
 import org.bukkit.Color;
 import org.bukkit.Particle;
 import org.bukkit.entity.AreaEffectCloud;
@@ -45,7 +44,7 @@ public class AbsorbProjectileTask extends AbstractFightTask {
         }
         _absorbed = true;
         DragonHelper.healDragon(dragon, _event.getFinalDamage());
-        AreaEffectCloud cloud = (AreaEffectCloud) Util.WORLD_THE_END.spawnEntity(dragon.getLocation(), EntityType.AREA_EFFECT_CLOUD);
+        AreaEffectCloud cloud = (AreaEffectCloud) _fight.getWorld().spawnEntity(dragon.getLocation(), EntityType.AREA_EFFECT_CLOUD);
         cloud.setParticle(Particle.REDSTONE, new Particle.DustOptions(Color.LIME, 1));
         cloud.setDuration(10);
         cloud.setRadius(5.0f);
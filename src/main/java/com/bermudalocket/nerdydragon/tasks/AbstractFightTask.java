@@ -7,37 +7,107 @@
 package com.bermudalocket.nerdydragon.tasks;
 
 import com.bermudalocket.nerdydragon.EnderDragonFight;
+import com.bermudalocket.nerdydragon.FightIntent;
+import com.bermudalocket.nerdydragon.FightSnapshot;
 import com.bermudalocket.nerdydragon.NerdyDragon;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.EnderDragon;
 import org.bukkit.scheduler.BukkitTask;
 
+// ------------------------------------------------------------------------
+/**
+ * A task run on behalf of a fight, either on the main thread or, if not
+ * forced to be sync, asynchronously. Async tasks must not touch the dragon or
+ * any other entity: they read {@link #getSnapshot()} and make changes by
+ * posting intents with {@link #post(FightIntent)}.
+ */
 public abstract class AbstractFightTask implements Runnable {
 
     final EnderDragonFight _fight;
 
-    private final BukkitTask _task;
+    /**
+     * The scheduled task. Volatile and possibly still null when the task
+     * first runs, since an async task can start before the scheduler call
+     * which created it has returned.
+     */
+    private volatile BukkitTask _task;
+
+    /**
+     * True if this task runs on the main thread, where its running time is
+     * recorded if it overruns.
+     */
+    private final boolean _sync;
 
     AbstractFightTask(EnderDragonFight fight, boolean forceSync) {
         _fight = fight;
+        _sync = forceSync;
         if (forceSync) {
-            _task = Bukkit.getScheduler().runTask(NerdyDragon.PLUGIN, this);
+            _task = Bukkit.getScheduler().runTask(NerdyDragon.PLUGIN, this::runIfActive);
         } else {
-            _task = Bukkit.getScheduler().runTaskAsynchronously(NerdyDragon.PLUGIN, this);
+            _task = Bukkit.getScheduler().runTaskAsynchronously(NerdyDragon.PLUGIN, this::runIfActive);
         }
     }
 
     AbstractFightTask(EnderDragonFight fight, boolean forceSync, int delay, int period) {
         _fight = fight;
+        _sync = forceSync;
         if (forceSync) {
-            _task = Bukkit.getScheduler().runTaskTimer(NerdyDragon.PLUGIN, this, delay, period);
+            _task = Bukkit.getScheduler().runTaskTimer(NerdyDragon.PLUGIN, this::runIfActive, delay, period);
+        } else {
+            _task = Bukkit.getScheduler().runTaskTimerAsynchronously(NerdyDragon.PLUGIN, this::runIfActive, delay, period);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Runs this task if its fight is still in progress; otherwise cancels it,
+     * so a task never outlives its fight. If the task isn't assigned yet, a
+     * repeating task is cancelled on its next run. A sync task which runs too
+     * long is recorded in the fight's timeline.
+     */
+    private void runIfActive() {
+        if (!_fight.isActive()) {
+            BukkitTask task = _task;
+            if (task != null) {
+                task.cancel();
+            }
+        } else if (_sync) {
+            long started = System.nanoTime();
+            run();
+            _fight.getRecorder().recordIfOverrun(getClass(), started);
         } else {
-            _task = Bukkit.getScheduler().runTaskTimerAsynchronously(NerdyDragon.PLUGIN, this, delay, period);
+            run();
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the live dragon. Main thread only.
+     *
+     * @return the dragon.
+     */
     EnderDragon getDragon() {
         return _fight.getDragon();
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the fight's most recent snapshot. Safe from any thread.
+     *
+     * @return the snapshot, or null if the fight hasn't ticked yet.
+     */
+    FightSnapshot getSnapshot() {
+        return _fight.getSnapshot();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Queues a change to be applied on the main thread. Safe from any thread.
+     *
+     * @param intent the intent.
+     */
+    void post(FightIntent intent) {
+        _fight.post(intent);
+    }
+
 }
@@ -7,6 +7,9 @@
 package com.bermudalocket.nerdydragon.tasks;
 
 import com.bermudalocket.nerdydragon.EnderDragonFight;
+import com.bermudalocket.nerdydragon.FightIntent;
+import com.bermudalocket.nerdydragon.FightSnapshot;
+import org.bukkit.Location;
 import org.bukkit.entity.EnderDragon;
 
 import java.util.Arrays;
@@ -18,12 +21,22 @@ public class LeavePortalTask extends AbstractFightTask {
         super(fight, false);
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Checks the latest snapshot off the main thread and, if the dragon looks
+     * to be at the portal, asks for the phase change. The check is repeated
+     * against the live dragon on the main thread before the phase is changed.
+     */
     @Override
     public void run() {
-        EnderDragon dragon = getDragon();
-        if (isAtPortal(dragon)) {
-            dragon.setPhase(EnderDragon.Phase.LEAVE_PORTAL);
+        FightSnapshot snapshot = getSnapshot();
+        if (snapshot == null || !isAtPortal(snapshot.getDragonX(), snapshot.getDragonZ(), snapshot.getPhase())) {
+            return;
         }
+        post(FightIntent.setPhase(EnderDragon.Phase.LEAVE_PORTAL, dragon -> {
+            Location location = dragon.getLocation();
+            return isAtPortal(location.getX(), location.getZ(), dragon.getPhase());
+        }));
     }
 
     // ------------------------------------------------------------------------
@@ -33,16 +46,18 @@ public class LeavePortalTask extends AbstractFightTask {
      * when the dragon is not in a compatible phase (i.e. isn't really at the
      * portal), a server crash is possible.
      *
-     * @param dragon the dragon.
+     * @param dragonX the dragon's x coordinate.
+     * @param dragonZ the dragon's z coordinate.
+     * @param phase the dragon's phase.
      * @return true if the dragon is hovering at the portal.
      */
-    private boolean isAtPortal(EnderDragon dragon) {
+    private static boolean isAtPortal(double dragonX, double dragonZ, EnderDragon.Phase phase) {
         // check position
-        double x = Math.floor(Math.abs(dragon.getLocation().getX()));
-        double z = Math.floor(Math.abs(dragon.getLocation().getY()));
+        double x = Math.floor(Math.abs(dragonX));
+        double z = Math.floor(Math.abs(dragonZ));
 
         // check phase
-        boolean isPortalPhase = PORTAL_PHASES.contains(dragon.getPhase());
+        boolean isPortalPhase = PORTAL_PHASES.contains(phase);
 
         return isPortalPhase && (x <= 3 && z <= 3);
     }
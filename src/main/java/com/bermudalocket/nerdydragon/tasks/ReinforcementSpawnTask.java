@@ -9,10 +9,8 @@ package com.bermudalocket.nerdydragon.tasks;
 import com.bermudalocket.nerdydragon.EnderDragonFight;
 import com.bermudalocket.nerdydragon.FightStage;
 import com.bermudalocket.nerdydragon.MathUtil;
-import com.bermudalocket.nerdydragon.util.OrderedPair;
 import org.bukkit.Location;
 import org.bukkit.Sound;
-import org.bukkit.World;
 import org.bukkit.entity.Bat;
 import org.bukkit.entity.Enderman;
 import org.bukkit.entity.Entity;
@@ -88,22 +86,18 @@ public class ReinforcementSpawnTask extends AbstractFightTask {
     }
 
     private void spawnShulker() {
-        World world = getDragon().getWorld();
-        OrderedPair<Integer> coords = MathUtil.getRandomCoordinates(30);
-        int x = coords.getA();
-        int z = coords.getB();
-        double y = world.getHighestBlockYAt(x, z) + 1;
-        Location spawnLoc = new Location(world, x, y, z);
+        Location spawnLoc = _fight.findSpawnLocation(30, 1);
+        if (spawnLoc == null) {
+            return;
+        }
         _fight.spawnReinforcement(spawnLoc, EntityType.SHULKER);
     }
 
     private void spawnEvokerRidingBat() {
-        World world = getDragon().getWorld();
-        OrderedPair<Integer> coords = MathUtil.getRandomCoordinates(30);
-        int x = coords.getA();
-        int z = coords.getB();
-        double y = world.getHighestBlockYAt(x, z) + 12;
-        Location spawnLoc = new Location(world, x, y, z);
+        Location spawnLoc = _fight.findSpawnLocation(30, 12);
+        if (spawnLoc == null) {
+            return;
+        }
         Bat bat = (Bat) _fight.spawnReinforcement(spawnLoc, EntityType.BAT);
         Evoker evoker = (Evoker) _fight.spawnReinforcement(spawnLoc, EntityType.EVOKER);
         bat.addPassenger(evoker);
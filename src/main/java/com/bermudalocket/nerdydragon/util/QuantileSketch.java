@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2019 bermudalocket. All rights reserved.
+ * Unauthorized copying or distribution of this item without permission of the author is prohibited.
+ * Proprietary and Confidential
+ * Written by bermudalocket, 2019.
+ */
+package com.bermudalocket.nerdydragon.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A fixed-memory quantile sketch in the style of KLL (Karnin,
+ * Lang and Liberty). Values are kept in a stack of "compactors"; an item at
+ * level h stands for 2^h original values. When a level fills up it is sorted
+ * and every other item (starting at a random offset) is promoted to the next
+ * level, so the sketch holds O(k log(n/k)) items no matter how many values
+ * it has seen, and rank error stays around 1/k.
+ *
+ * Not thread-safe.
+ */
+public class QuantileSketch {
+
+    private static final int MIN_CAPACITY = 2;
+
+    private final int _k;
+
+    private double[][] _levels = new double[1][];
+
+    private int[] _sizes = new int[1];
+
+    /**
+     * Per-level capacities, recomputed only when the sketch grows a level.
+     */
+    private int[] _capacities = new int[1];
+
+    private long _count;
+
+    private double _min = Double.NaN;
+
+    private double _max = Double.NaN;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param k the accuracy parameter; larger is more accurate and larger.
+     */
+    public QuantileSketch(int k) {
+        if (k < MIN_CAPACITY) {
+            throw new IllegalArgumentException();
+        }
+        _k = k;
+        _capacities[0] = k;
+        _levels[0] = new double[k];
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the number of values added to this sketch.
+     *
+     * @return the number of values added to this sketch.
+     */
+    public long getCount() {
+        return _count;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Adds a value.
+     *
+     * @param value the value.
+     */
+    public void add(double value) {
+        append(0, value);
+        _count++;
+        _min = (_count == 1 || value < _min) ? value : _min;
+        _max = (_count == 1 || value > _max) ? value : _max;
+        compress();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the approximate fraction of added values less than or equal to
+     * the given value.
+     *
+     * @param value the value.
+     * @return the normalized rank in [0, 1], or NaN if the sketch is empty.
+     */
+    public double getRank(double value) {
+        if (_count == 0) {
+            return Double.NaN;
+        }
+        long weight = 0;
+        for (int h = 0; h < _levels.length; h++) {
+            double[] items = _levels[h];
+            int matched = 0;
+            for (int i = 0; i < _sizes[h]; i++) {
+                if (items[i] <= value) {
+                    matched++;
+                }
+            }
+            weight += (long) matched << h;
+        }
+        return Math.min(1.0, (double) weight / _count);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Returns the approximate value at the given quantile.
+     *
+     * @param quantile the quantile in [0, 1].
+     * @return the value, or NaN if the sketch is empty.
+     */
+    public double getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException();
+        }
+        if (_count == 0) {
+            return Double.NaN;
+        }
+        if (quantile == 0) {
+            return _min;
+        }
+        if (quantile == 1) {
+            return _max;
+        }
+        int size = 0;
+        for (int h = 0; h < _levels.length; h++) {
+            size += _sizes[h];
+        }
+        double[] values = new double[size];
+        int[] levelOf = new int[size];
+        Integer[] order = new Integer[size];
+        int n = 0;
+        for (int h = 0; h < _levels.length; h++) {
+            for (int i = 0; i < _sizes[h]; i++) {
+                values[n] = _levels[h][i];
+                levelOf[n] = h;
+                order[n] = n;
+                n++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        double target = quantile * _count;
+        long cumulative = 0;
+        for (int i = 0; i < size; i++) {
+            int index = order[i];
+            cumulative += 1L << levelOf[index];
+            if (cumulative >= target) {
+                return values[index];
+            }
+        }
+        return _max;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Appends a value to the given level, growing its buffer if needed.
+     */
+    private void append(int level, double value) {
+        double[] items = _levels[level];
+        if (_sizes[level] == items.length) {
+            items = _levels[level] = Arrays.copyOf(items, Math.max(MIN_CAPACITY, items.length * 2));
+        }
+        items[_sizes[level]++] = value;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Compacts every level that has reached its capacity, bottom-up.
+     */
+    private void compress() {
+        for (int h = 0; h < _levels.length; h++) {
+            if (_sizes[h] >= _capacities[h]) {
+                if (h + 1 == _levels.length) {
+                    grow();
+                }
+                compact(h);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Sorts the given level and promotes every other item to the level above.
+     * If the level holds an odd number of items, one stays behind.
+     */
+    private void compact(int level) {
+        double[] items = _levels[level];
+        int size = _sizes[level];
+        Arrays.sort(items, 0, size);
+        int even = size & ~1;
+        int offset = ThreadLocalRandom.current().nextBoolean() ? 1 : 0;
+        for (int i = offset; i < even; i += 2) {
+            append(level + 1, items[i]);
+        }
+        if (even != size) {
+            items[0] = items[size - 1];
+            _sizes[level] = 1;
+        } else {
+            _sizes[level] = 0;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Adds a level to the top of the stack and recomputes the capacities,
+     * which shrink geometrically towards the bottom.
+     */
+    private void grow() {
+        int height = _levels.length + 1;
+        _levels = Arrays.copyOf(_levels, height);
+        _sizes = Arrays.copyOf(_sizes, height);
+        _capacities = new int[height];
+        double scale = 1.0;
+        for (int h = height - 1; h >= 0; h--) {
+            _capacities[h] = Math.max(MIN_CAPACITY, (int) Math.ceil(_k * scale));
+            scale *= 2.0 / 3.0;
+        }
+        _levels[height - 1] = new double[_capacities[height - 1]];
+    }
+
+}